@@ -0,0 +1,12 @@
+#!/bin/sh
+# Build and run the benchmarks on a plain JVM - not part of the apk build.
+# usage: run.sh [filter [warmup measured millis]]
+cd "$(dirname "$0")" || exit 1
+rm -rf build && mkdir -p build
+javac -Xlint:all -Werror -d build \
+	$(find src -name '*.java') \
+	../src/com/example/licodeclient/apprtc/FramePool.java \
+	../src/com/example/licodeclient/SdpRewriter.java \
+	../src/com/example/licodeclient/SdpPolicy.java || exit 1
+exec java -Xms256m -Xmx256m -XX:+UseParallelGC -cp build \
+	com.example.licodeclient.bench.BenchmarkMain "$@"
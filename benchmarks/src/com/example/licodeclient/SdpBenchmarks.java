@@ -0,0 +1,116 @@
+package com.example.licodeclient;
+
+import com.example.licodeclient.bench.Harness;
+
+/**
+ * Benchmarks of the rewriting applied to every local description before it
+ * is set and sent to licode.
+ */
+public class SdpBenchmarks {
+	/** an offer as libjingle creates it for a published audio/video stream */
+	static final String OFFER = "v=0\r\n"
+			+ "o=- 4323398519236547418 2 IN IP4 127.0.0.1\r\n"
+			+ "s=-\r\n"
+			+ "t=0 0\r\n"
+			+ "a=group:BUNDLE audio video\r\n"
+			+ "a=msid-semantic: WMS LCMSv0\r\n"
+			+ "m=audio 1 RTP/SAVPF 111 103 104 0 8 106 105 13 126\r\n"
+			+ "c=IN IP4 0.0.0.0\r\n"
+			+ "a=rtcp:1 IN IP4 0.0.0.0\r\n"
+			+ "a=candidate:3873512932 1 udp 2122260223 192.168.1.23 43120 typ host generation 0\r\n"
+			+ "a=candidate:3873512932 2 udp 2122260223 192.168.1.23 43121 typ host generation 0\r\n"
+			+ "a=candidate:1620238129 1 udp 1686052607 84.172.16.3 43120 typ srflx raddr 192.168.1.23 rport 43120 generation 0\r\n"
+			+ "a=candidate:1620238129 2 udp 1686052607 84.172.16.3 43121 typ srflx raddr 192.168.1.23 rport 43121 generation 0\r\n"
+			+ "a=ice-ufrag:Zc9/PJs9S2UvHq6B\r\n"
+			+ "a=ice-pwd:Lrj0WvIJ9pT3ViAY9A1UwKv6\r\n"
+			+ "a=ice-options:google-ice\r\n"
+			+ "a=fingerprint:sha-256 4B:1F:0E:97:62:0C:33:74:4A:33:97:CD:2B:8D:54:0A:71:F0:5B:97:4B:1E:64:3B:3D:94:62:5A:6E:39:2B:13\r\n"
+			+ "a=setup:actpass\r\n"
+			+ "a=mid:audio\r\n"
+			+ "a=extmap:1 urn:ietf:params:rtp-hdrext:ssrc-audio-level\r\n"
+			+ "a=extmap:3 http://www.webrtc.org/experiments/rtp-hdrext/abs-send-time\r\n"
+			+ "a=sendrecv\r\n"
+			+ "a=rtcp-mux\r\n"
+			+ "a=crypto:1 AES_CM_128_HMAC_SHA1_80 inline:4ZHzYxvv3OmRs+i7u1ZsQfFh0ar5M/p1BsvHzvxF\r\n"
+			+ "a=rtpmap:111 opus/48000/2\r\n"
+			+ "a=fmtp:111 minptime=10\r\n"
+			+ "a=rtpmap:103 ISAC/16000\r\n"
+			+ "a=rtpmap:104 ISAC/32000\r\n"
+			+ "a=rtpmap:0 PCMU/8000\r\n"
+			+ "a=rtpmap:8 PCMA/8000\r\n"
+			+ "a=rtpmap:106 CN/32000\r\n"
+			+ "a=rtpmap:105 CN/16000\r\n"
+			+ "a=rtpmap:13 CN/8000\r\n"
+			+ "a=rtpmap:126 telephone-event/8000\r\n"
+			+ "a=maxptime:60\r\n"
+			+ "a=ssrc:2815383962 cname:W1YdLwMmKq4c8Y3E\r\n"
+			+ "a=ssrc:2815383962 msid:LCMSv0 LCMSa0\r\n"
+			+ "a=ssrc:2815383962 mslabel:LCMSv0\r\n"
+			+ "a=ssrc:2815383962 label:LCMSa0\r\n"
+			+ "m=video 1 RTP/SAVPF 100 116 117\r\n"
+			+ "c=IN IP4 0.0.0.0\r\n"
+			+ "a=rtcp:1 IN IP4 0.0.0.0\r\n"
+			+ "a=candidate:3873512932 1 udp 2122260223 192.168.1.23 43122 typ host generation 0\r\n"
+			+ "a=candidate:3873512932 2 udp 2122260223 192.168.1.23 43123 typ host generation 0\r\n"
+			+ "a=candidate:1620238129 1 udp 1686052607 84.172.16.3 43122 typ srflx raddr 192.168.1.23 rport 43122 generation 0\r\n"
+			+ "a=candidate:1620238129 2 udp 1686052607 84.172.16.3 43123 typ srflx raddr 192.168.1.23 rport 43123 generation 0\r\n"
+			+ "a=ice-ufrag:Zc9/PJs9S2UvHq6B\r\n"
+			+ "a=ice-pwd:Lrj0WvIJ9pT3ViAY9A1UwKv6\r\n"
+			+ "a=ice-options:google-ice\r\n"
+			+ "a=fingerprint:sha-256 4B:1F:0E:97:62:0C:33:74:4A:33:97:CD:2B:8D:54:0A:71:F0:5B:97:4B:1E:64:3B:3D:94:62:5A:6E:39:2B:13\r\n"
+			+ "a=setup:actpass\r\n"
+			+ "a=mid:video\r\n"
+			+ "a=extmap:2 urn:ietf:params:rtp-hdrext:toffset\r\n"
+			+ "a=extmap:3 http://www.webrtc.org/experiments/rtp-hdrext/abs-send-time\r\n"
+			+ "a=sendrecv\r\n"
+			+ "a=rtcp-mux\r\n"
+			+ "a=crypto:1 AES_CM_128_HMAC_SHA1_80 inline:4ZHzYxvv3OmRs+i7u1ZsQfFh0ar5M/p1BsvHzvxF\r\n"
+			+ "a=rtpmap:100 VP8/90000\r\n"
+			+ "a=rtcp-fb:100 ccm fir\r\n"
+			+ "a=rtcp-fb:100 nack\r\n"
+			+ "a=rtcp-fb:100 nack pli\r\n"
+			+ "a=rtcp-fb:100 goog-remb\r\n"
+			+ "a=rtpmap:116 red/90000\r\n"
+			+ "a=rtpmap:117 ulpfec/90000\r\n"
+			+ "a=ssrc:1284741870 cname:W1YdLwMmKq4c8Y3E\r\n"
+			+ "a=ssrc:1284741870 msid:LCMSv0 LCMSv0\r\n"
+			+ "a=ssrc:1284741870 mslabel:LCMSv0\r\n"
+			+ "a=ssrc:1284741870 label:LCMSv0\r\n";
+
+	public static void register(Harness harness) {
+		harness.add("SdpRewriter.limitBandwidth", new Harness.Benchmark() {
+			@Override
+			public long run(int ops) {
+				long sum = 0;
+				for (int i = 0; i < ops; ++i) {
+					sum += SdpRewriter.limitBandwidth(OFFER, 25, 300).length();
+				}
+				return sum;
+			}
+		});
+
+		final SdpPolicy policy = new SdpPolicy();
+		harness.add("SdpPolicy.apply default", new Harness.Benchmark() {
+			@Override
+			public long run(int ops) {
+				long sum = 0;
+				for (int i = 0; i < ops; ++i) {
+					sum += policy.apply(OFFER, 25, 300).length();
+				}
+				return sum;
+			}
+		});
+
+		final SdpPolicy none = SdpPolicy.none();
+		harness.add("SdpPolicy.apply none", new Harness.Benchmark() {
+			@Override
+			public long run(int ops) {
+				long sum = 0;
+				for (int i = 0; i < ops; ++i) {
+					sum += none.apply(OFFER, 25, 300).length();
+				}
+				return sum;
+			}
+		});
+	}
+}
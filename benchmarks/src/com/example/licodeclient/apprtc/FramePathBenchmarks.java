@@ -0,0 +1,95 @@
+package com.example.licodeclient.apprtc;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.webrtc.VideoRenderer.I420Frame;
+
+import com.example.licodeclient.bench.Harness;
+
+/**
+ * Benchmarks of the frame path: FramePool under contention, the I420 copy
+ * done for every queued frame, and the size class lookup.
+ */
+public class FramePathBenchmarks {
+	/** frame sizes copied, width and height */
+	private static final int[][] SIZES = { { 320, 240 }, { 640, 480 },
+			{ 1280, 720 } };
+	/** threads taking and returning frames at once */
+	private static final int[] THREADS = { 1, 2, 4, 8, 16 };
+
+	public static void register(Harness harness) {
+		for (final int threads : THREADS) {
+			// one pool shared by all threads, one size class as in a room of
+			// equally sized streams
+			final FramePool pool = new FramePool();
+			final I420Frame template = newFrame(320, 240, 0);
+			harness.add("FramePool.takeFrame+returnFrame", threads,
+					new Harness.Benchmark() {
+						@Override
+						public long run(int ops) {
+							long sum = 0;
+							for (int i = 0; i < ops; ++i) {
+								I420Frame frame = pool.takeFrame(template);
+								sum += frame.width;
+								pool.returnFrame(frame);
+							}
+							return sum;
+						}
+					});
+		}
+
+		for (int[] size : SIZES) {
+			final I420Frame source = newFrame(size[0], size[1], 1);
+			final I420Frame target = newFrame(size[0], size[1], 2);
+			harness.add("I420Frame.copyFrom " + size[0] + "x" + size[1],
+					new Harness.Benchmark() {
+						@Override
+						public long run(int ops) {
+							long sum = 0;
+							for (int i = 0; i < ops; ++i) {
+								sum += target.copyFrom(source).yuvPlanes[0]
+										.get(i % target.yuvPlanes[0].capacity());
+							}
+							return sum;
+						}
+					});
+		}
+
+		final I420Frame[] frames = new I420Frame[SIZES.length];
+		for (int i = 0; i < SIZES.length; ++i) {
+			frames[i] = new I420Frame(SIZES[i][0], SIZES[i][1], strides(SIZES[i][0]),
+					new ByteBuffer[3]);
+		}
+		harness.add("FramePool.summarizeFrameDimensions",
+				new Harness.Benchmark() {
+					@Override
+					public long run(int ops) {
+						long sum = 0;
+						for (int i = 0; i < ops; ++i) {
+							sum += FramePool.summarizeFrameDimensions(frames[i
+									% frames.length]);
+						}
+						return sum;
+					}
+				});
+	}
+
+	private static int[] strides(int width) {
+		int chroma = (width + 1) / 2;
+		return new int[] { width, chroma, chroma };
+	}
+
+	/** a frame filled with noise from a fixed seed */
+	private static I420Frame newFrame(int width, int height, long seed) {
+		I420Frame frame = new I420Frame(width, height, strides(width), null);
+		Random random = new Random(seed);
+		for (ByteBuffer plane : frame.yuvPlanes) {
+			byte[] noise = new byte[plane.capacity()];
+			random.nextBytes(noise);
+			plane.put(noise);
+			plane.position(0);
+		}
+		return frame;
+	}
+}
@@ -0,0 +1,21 @@
+package com.example.licodeclient.bench;
+
+import com.example.licodeclient.SdpBenchmarks;
+import com.example.licodeclient.apprtc.FramePathBenchmarks;
+
+/**
+ * Runs the benchmarks: optionally a name filter, then the warmup and measured
+ * iteration counts and the iteration length in ms.
+ */
+public class BenchmarkMain {
+	public static void main(String[] args) throws Exception {
+		Harness harness = new Harness();
+		if (args.length >= 4) {
+			harness.setIterations(Integer.parseInt(args[1]),
+					Integer.parseInt(args[2]), Long.parseLong(args[3]));
+		}
+		FramePathBenchmarks.register(harness);
+		SdpBenchmarks.register(harness);
+		harness.run(args.length > 0 && !args[0].isEmpty() ? args[0] : null);
+	}
+}
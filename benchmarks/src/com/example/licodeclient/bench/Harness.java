@@ -0,0 +1,178 @@
+package com.example.licodeclient.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CyclicBarrier;
+
+/**
+ * Minimal benchmark runner: every benchmark is warmed up, then measured in
+ * fixed-length iterations, and reported as time per operation. Iteration
+ * counts and lengths are fixed and all inputs are built from fixed seeds, so
+ * two runs on the same machine and JVM are comparable. Benchmarks may run on
+ * several threads at once to measure contention; the time per operation is
+ * then the wall time of an iteration divided by the operations of one thread.
+ */
+public final class Harness {
+	/** one benchmark, run |ops| times per call */
+	public interface Benchmark {
+		/**
+		 * run the operation |ops| times on the calling thread; the result is
+		 * kept so the work cannot be optimized away
+		 */
+		long run(int ops) throws Exception;
+	}
+
+	private static final class Entry {
+		final String name;
+		final int threads;
+		final Benchmark benchmark;
+
+		Entry(String name, int threads, Benchmark benchmark) {
+			this.name = name;
+			this.threads = threads;
+			this.benchmark = benchmark;
+		}
+	}
+
+	private final List<Entry> mEntries = new ArrayList<Entry>();
+	private int mWarmupIterations = 5;
+	private int mIterations = 10;
+	private long mIterationNanos = 200000000L;
+	/** keeps benchmark results alive */
+	private static volatile long sSink;
+
+	/** set the iteration counts and the length of an iteration in ms */
+	public Harness setIterations(int warmup, int measured, long millis) {
+		mWarmupIterations = warmup;
+		mIterations = measured;
+		mIterationNanos = millis * 1000000L;
+		return this;
+	}
+
+	/** add a benchmark running on one thread */
+	public void add(String name, Benchmark benchmark) {
+		add(name, 1, benchmark);
+	}
+
+	/** add a benchmark running on |threads| threads at once */
+	public void add(String name, int threads, Benchmark benchmark) {
+		mEntries.add(new Entry(name, threads, benchmark));
+	}
+
+	/** run all benchmarks whose name contains |filter|, null for all */
+	public void run(String filter) throws Exception {
+		System.out.println(String.format(Locale.US, "# %s %s, %d cpus",
+				System.getProperty("java.vm.name"),
+				System.getProperty("java.version"), Runtime.getRuntime()
+						.availableProcessors()));
+		System.out.println(String.format(Locale.US,
+				"# %d warmup, %d measured iterations of %d ms",
+				mWarmupIterations, mIterations, mIterationNanos / 1000000L));
+		System.out.println(String.format(Locale.US, "%-44s %7s %12s %10s %12s",
+				"benchmark", "threads", "ns/op", "+-", "min ns/op"));
+		for (Entry entry : mEntries) {
+			if (filter == null || entry.name.contains(filter)) {
+				measure(entry);
+			}
+		}
+	}
+
+	private void measure(Entry entry) throws Exception {
+		int batch = calibrate(entry.benchmark);
+		for (int i = 0; i < mWarmupIterations; ++i) {
+			iterate(entry, batch);
+		}
+		double[] nanosPerOp = new double[mIterations];
+		for (int i = 0; i < mIterations; ++i) {
+			nanosPerOp[i] = iterate(entry, batch);
+		}
+		double mean = 0;
+		for (double value : nanosPerOp) {
+			mean += value;
+		}
+		mean /= nanosPerOp.length;
+		double variance = 0;
+		for (double value : nanosPerOp) {
+			variance += (value - mean) * (value - mean);
+		}
+		double deviation = Math.sqrt(variance / Math.max(1, nanosPerOp.length - 1));
+		Arrays.sort(nanosPerOp);
+		System.out.println(String.format(Locale.US,
+				"%-44s %7d %12.1f %10.1f %12.1f", entry.name, entry.threads,
+				mean, deviation, nanosPerOp[0]));
+	}
+
+	/** operations per call taking roughly a millisecond */
+	private int calibrate(Benchmark benchmark) throws Exception {
+		int ops = 1;
+		while (ops < (1 << 24)) {
+			long start = System.nanoTime();
+			sSink += benchmark.run(ops);
+			if (System.nanoTime() - start > 1000000L) {
+				break;
+			}
+			ops *= 2;
+		}
+		return ops;
+	}
+
+	/** one iteration, returns the time per operation of a thread in ns */
+	private double iterate(final Entry entry, final int batch) throws Exception {
+		if (entry.threads == 1) {
+			long ops = 0;
+			long start = System.nanoTime();
+			long elapsed;
+			do {
+				sSink += entry.benchmark.run(batch);
+				ops += batch;
+				elapsed = System.nanoTime() - start;
+			} while (elapsed < mIterationNanos);
+			return elapsed / (double) ops;
+		}
+
+		final CyclicBarrier barrier = new CyclicBarrier(entry.threads + 1);
+		final long[] ops = new long[entry.threads];
+		final Exception[] failure = new Exception[1];
+		final long[] deadline = new long[1];
+		Thread[] threads = new Thread[entry.threads];
+		for (int t = 0; t < threads.length; ++t) {
+			final int index = t;
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						barrier.await();
+						long sink = 0;
+						long done = 0;
+						do {
+							sink += entry.benchmark.run(batch);
+							done += batch;
+						} while (System.nanoTime() < deadline[0]);
+						ops[index] = done;
+						sSink += sink;
+					} catch (Exception e) {
+						failure[0] = e;
+					}
+				}
+			});
+			threads[t].start();
+		}
+		long start = System.nanoTime();
+		deadline[0] = start + mIterationNanos;
+		barrier.await();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		long elapsed = System.nanoTime() - start;
+		if (failure[0] != null) {
+			throw failure[0];
+		}
+		long total = 0;
+		for (long done : ops) {
+			total += done;
+		}
+		return elapsed / (total / (double) entry.threads);
+	}
+}
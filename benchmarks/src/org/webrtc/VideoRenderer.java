@@ -0,0 +1,63 @@
+package org.webrtc;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Stand-in for the VideoRenderer of libjingle_peerconnection.jar, so the frame
+ * path can be benchmarked on a plain JVM without the native library. Only
+ * I420Frame is provided; its allocation and copy follow the jar's version.
+ */
+public class VideoRenderer {
+	/** Java version of cricket::VideoFrame. */
+	public static class I420Frame {
+		public final int width;
+		public final int height;
+		public final int[] yuvStrides;
+		public final ByteBuffer[] yuvPlanes;
+
+		/**
+		 * Construct a frame of the given dimensions with the specified planar
+		 * data. If |yuvPlanes| is null, new planes of the appropriate sizes
+		 * are allocated.
+		 */
+		public I420Frame(int width, int height, int[] yuvStrides,
+				ByteBuffer[] yuvPlanes) {
+			this.width = width;
+			this.height = height;
+			this.yuvStrides = yuvStrides;
+			if (yuvPlanes == null) {
+				yuvPlanes = new ByteBuffer[3];
+				yuvPlanes[0] = ByteBuffer.allocateDirect(yuvStrides[0] * height);
+				yuvPlanes[1] = ByteBuffer.allocateDirect(yuvStrides[1] * height);
+				yuvPlanes[2] = ByteBuffer.allocateDirect(yuvStrides[2] * height);
+			}
+			this.yuvPlanes = yuvPlanes;
+		}
+
+		/** Copy the planes out of |source| into |this| and return |this|. */
+		public I420Frame copyFrom(I420Frame source) {
+			if (!Arrays.equals(yuvStrides, source.yuvStrides)
+					|| width != source.width || height != source.height) {
+				throw new RuntimeException("Mismatched dimensions!  Source: "
+						+ source.toString() + ", destination: " + toString());
+			}
+			copyPlane(source.yuvPlanes[0], yuvPlanes[0]);
+			copyPlane(source.yuvPlanes[1], yuvPlanes[1]);
+			copyPlane(source.yuvPlanes[2], yuvPlanes[2]);
+			return this;
+		}
+
+		@Override
+		public String toString() {
+			return width + "x" + height + ":" + yuvStrides[0] + ":"
+					+ yuvStrides[1] + ":" + yuvStrides[2];
+		}
+
+		private void copyPlane(ByteBuffer src, ByteBuffer dst) {
+			src.position(0).limit(src.capacity());
+			dst.put(src);
+			dst.position(0).limit(dst.capacity());
+		}
+	}
+}
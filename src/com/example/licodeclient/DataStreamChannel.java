@@ -0,0 +1,204 @@
+package com.example.licodeclient;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+import org.webrtc.DataChannel;
+
+import android.os.Handler;
+
+/**
+ * Data of one stream, sent over the stream's data channel when there is one
+ * and over socket.io otherwise. Outgoing messages are queued up to a limit and
+ * drained as the channel's buffer empties, so an app sending too fast gets
+ * refused and told when to go on, instead of flooding the connection. The
+ * libjingle version used has no callback for the buffered amount, it is polled
+ * while messages are waiting.
+ */
+class DataStreamChannel implements DataChannel.Observer {
+	/** sends a message over socket.io when no data channel is open */
+	interface Fallback {
+		void send(ByteBuffer data, boolean binary);
+	}
+
+	/** receives the messages and flow control of the channel */
+	interface Listener {
+		/** a message arrived on the data channel */
+		void onMessage(ByteBuffer data, boolean binary);
+
+		/** a refused send may be retried now */
+		void onWritable();
+	}
+
+	/** bytes queued before send() refuses */
+	static final int MAX_QUEUED_BYTES = 64 * 1024;
+	/** the queue is writable again below this size */
+	private static final int LOW_WATERMARK = MAX_QUEUED_BYTES / 4;
+	/** bytes kept in flight in the data channel's own buffer */
+	private static final long HIGH_WATERMARK = 16 * 1024;
+	/** bytes handed to socket.io per drain, limiting the fallback to 100kB/s */
+	private static final int FALLBACK_BYTES_PER_DRAIN = 2 * 1024;
+	/** interval between drains while messages are waiting */
+	private static final long DRAIN_INTERVAL_MS = 20;
+
+	private final Handler mHandler;
+	private final Fallback mFallback;
+	private volatile Listener mListener;
+	/** the data channel, null to always use the fallback */
+	private final DataChannel mChannel;
+
+	private final ArrayDeque<DataChannel.Buffer> mQueue = new ArrayDeque<DataChannel.Buffer>();
+	private int mQueuedBytes = 0;
+	/** a send was refused, onWritable() is due */
+	private boolean mRefused = false;
+	private boolean mDrainScheduled = false;
+
+	private final Runnable mDrain = new Runnable() {
+		@Override
+		public void run() {
+			drain();
+		}
+	};
+
+	/**
+	 * @param channel
+	 *            the stream's data channel, or null
+	 * @param handler
+	 *            thread the queue is drained on
+	 */
+	DataStreamChannel(DataChannel channel, Handler handler, Fallback fallback) {
+		mChannel = channel;
+		mHandler = handler;
+		mFallback = fallback;
+		if (mChannel != null) {
+			mChannel.registerObserver(this);
+		}
+	}
+
+	void setListener(Listener listener) {
+		mListener = listener;
+	}
+
+	/**
+	 * queue a message - the bytes between position and limit of |data|;
+	 * returns false if the queue is full, then wait for onWritable()
+	 */
+	boolean send(ByteBuffer data, boolean binary) {
+		ByteBuffer copy = ByteBuffer.allocateDirect(data.remaining());
+		copy.put(data.duplicate());
+		copy.flip();
+		synchronized (this) {
+			if (mQueuedBytes > 0
+					&& mQueuedBytes + copy.remaining() > MAX_QUEUED_BYTES) {
+				mRefused = true;
+				return false;
+			}
+			mQueue.add(new DataChannel.Buffer(copy, binary));
+			mQueuedBytes += copy.remaining();
+			scheduleDrain(0);
+		}
+		return true;
+	}
+
+	/** bytes waiting in the queue and the data channel */
+	long getBufferedAmount() {
+		long buffered;
+		synchronized (this) {
+			buffered = mQueuedBytes;
+		}
+		if (isOpen()) {
+			buffered += mChannel.bufferedAmount();
+		}
+		return buffered;
+	}
+
+	/** drop the queue and close the data channel */
+	void close() {
+		synchronized (this) {
+			mQueue.clear();
+			mQueuedBytes = 0;
+		}
+		mHandler.removeCallbacks(mDrain);
+		if (mChannel != null) {
+			mChannel.unregisterObserver();
+			mChannel.close();
+			mChannel.dispose();
+		}
+	}
+
+	@Override
+	public void onStateChange() {
+		if (isOpen()) {
+			synchronized (this) {
+				scheduleDrain(0);
+			}
+		}
+	}
+
+	@Override
+	public void onMessage(DataChannel.Buffer buffer) {
+		Listener listener = mListener;
+		if (listener != null) {
+			listener.onMessage(buffer.data, buffer.binary);
+		}
+	}
+
+	private boolean isOpen() {
+		return mChannel != null && mChannel.state() == DataChannel.State.OPEN;
+	}
+
+	/** whether messages have to wait for the data channel to open */
+	private boolean isConnecting() {
+		return mChannel != null
+				&& mChannel.state() == DataChannel.State.CONNECTING;
+	}
+
+	/** call with the lock held */
+	private void scheduleDrain(long delay) {
+		if (!mDrainScheduled) {
+			mDrainScheduled = true;
+			mHandler.postDelayed(mDrain, delay);
+		}
+	}
+
+	/** send queued messages as far as the channel takes them */
+	private void drain() {
+		boolean open = isOpen();
+		boolean connecting = !open && isConnecting();
+		long budget = open ? HIGH_WATERMARK - mChannel.bufferedAmount()
+				: FALLBACK_BYTES_PER_DRAIN;
+		boolean writable = false;
+		while (true) {
+			DataChannel.Buffer buffer;
+			synchronized (this) {
+				buffer = mQueue.peek();
+				if (buffer == null
+						|| connecting
+						|| (buffer.data.remaining() > budget && budget < (open ? HIGH_WATERMARK
+								: FALLBACK_BYTES_PER_DRAIN))) {
+					// wait for room - a message larger than the whole budget
+					// goes out alone
+					mDrainScheduled = false;
+					if (buffer != null) {
+						scheduleDrain(DRAIN_INTERVAL_MS);
+					}
+					break;
+				}
+				mQueue.poll();
+				mQueuedBytes -= buffer.data.remaining();
+				if (mRefused && mQueuedBytes < LOW_WATERMARK) {
+					mRefused = false;
+					writable = true;
+				}
+			}
+			budget -= buffer.data.remaining();
+			if (!open || !mChannel.send(buffer)) {
+				mFallback.send(buffer.data, buffer.binary);
+			}
+		}
+		Listener listener = mListener;
+		if (writable && listener != null) {
+			listener.onWritable();
+		}
+	}
+}
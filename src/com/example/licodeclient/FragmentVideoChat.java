@@ -143,6 +143,11 @@ public class FragmentVideoChat extends Fragment {
 				// ignored, for now
 			}
 
+			@Override
+			public void onStreamChanged(StreamDescriptionInterface stream) {
+				// ignored, for now - nothing shown depends on the attributes
+			}
+
 			@Override
 			public void onStreamAdded(final StreamDescriptionInterface stream) {
 				if (getActivity() == null) {
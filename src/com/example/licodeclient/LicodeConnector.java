@@ -1,12 +1,18 @@
 package com.example.licodeclient;
 
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -35,7 +41,9 @@ import android.os.Handler;
 import android.os.HandlerThread;
 import android.util.Base64;
 
+import com.example.licodeclient.StreamDescriptionInterface.StreamState;
 import com.example.licodeclient.apprtc.VideoStreamsView;
+import com.example.licodeclient.apprtc.VpxRateController;
 import com.koushikdutta.async.http.AsyncHttpClient;
 import com.koushikdutta.async.http.socketio.Acknowledge;
 import com.koushikdutta.async.http.socketio.ConnectCallback;
@@ -62,9 +70,78 @@ public class LicodeConnector implements VideoConnectorInterface {
 	/** default video bandwidth */
 	int mDefaultVideoBW;
 	/** max video bandwidth */
-	int mMaxVideoBW = 75;
+	volatile int mMaxVideoBW = 75;
 	/** max audio bandwidth */
 	int mMaxAudioBW = 25;
+	/** trimming applied to local session descriptions */
+	volatile SdpPolicy mSdpPolicy = new SdpPolicy();
+	/** send offers right away and trickle the ice candidates after them */
+	volatile boolean mTrickleIce = false;
+	/** gets the phase timings of all negotiations */
+	volatile NegotiationListener mNegotiationListener = null;
+	/** subscriptions waiting for and holding a negotiation slot */
+	private volatile SubscriptionScheduler mSubscriptions;
+	/** negotiations at a time, kept until the scheduler exists */
+	private volatile int mMaxSubscriptions = SubscriptionScheduler.DEFAULT_MAX_IN_FLIGHT;
+	/** gets informed about subscriptions, kept until the scheduler exists */
+	private volatile SubscriptionListener mSubscriptionListener = null;
+	/** delivers the room events to mObservers in batches */
+	private RoomEventDispatcher mEvents;
+	/** executor for room events set before init(), null for the default */
+	private volatile Executor mEventExecutor = null;
+	/** holds, orders and repeats the messages sent to the server */
+	private SignalingOutbox mOutbox;
+	/** orders added and removed streams with the stream list of a join */
+	private StreamEventSequencer mStreamEvents;
+	/** gets informed about the outbox */
+	volatile SignalingListener mSignalingListener = null;
+	/** encoders of local video kept within the b=AS video limit */
+	private final CopyOnWriteArrayList<VpxRateController> mRateControllers = new CopyOnWriteArrayList<VpxRateController>();
+	/** whether published streams carry their data over a data channel */
+	volatile boolean mDataChannelEnabled = false;
+	/** data of the published stream */
+	private volatile DataStreamChannel mLocalData;
+	/** receives binary data and flow control of data streams */
+	volatile DataStreamListener mDataListener = null;
+	/** whether the server offers one peer connection for all subscriptions */
+	volatile boolean mServerSinglePc = false;
+	/** first delay before reconnecting the signaling, doubled per attempt */
+	private static final long RECONNECT_BASE_DELAY_MS = 500;
+	/** longest delay between two reconnect attempts */
+	private static final long RECONNECT_MAX_DELAY_MS = 16000;
+	/** reconnect attempts before giving up and disconnecting */
+	private static final int RECONNECT_MAX_ATTEMPTS = 8;
+	/** a reconnect attempt without answer after this long is retried */
+	private static final long RECONNECT_ATTEMPT_TIMEOUT_MS = 10000;
+	/** whether a lost signaling connection is resumed */
+	volatile boolean mAutoReconnect = true;
+	/** the token the room was joined with, re-sent when resuming */
+	volatile String mToken;
+	/** set while the signaling connection is being resumed */
+	volatile boolean mReconnecting = false;
+	/** attempts of the current reconnect - VC thread only */
+	private int mReconnectAttempt = 0;
+	/**
+	 * channels whose messages stay valid when the session is resumed on a new
+	 * socket - all others refer to peer connections of the lost one
+	 */
+	private static final Set<String> SESSION_INDEPENDENT_CHANNELS = new HashSet<String>(
+			Arrays.asList("refreshToken", "sendDataStream", "unpublish"));
+	/** when the signaling connection got lost, in ms */
+	private long mReconnectStart = 0;
+	/** pending reconnect attempt */
+	private Runnable mReconnectRunnable = null;
+	/** gives up the running reconnect attempt when it takes too long */
+	private Runnable mReconnectTimeout = null;
+	/** number of successful reconnects */
+	private volatile int mReconnectCount = 0;
+	/**
+	 * current socket.io connect attempt - bumped by every attempt and whenever
+	 * the socket is dropped, so late completions of older attempts are ignored
+	 */
+	private final AtomicInteger mConnectAttempt = new AtomicInteger(0);
+	/** gets informed about reconnects */
+	volatile ReconnectListener mReconnectListener = null;
 	/** list of the streams */
 	ConcurrentHashMap<String, StreamDescriptionInterface> mRemoteStream = new ConcurrentHashMap<String, StreamDescriptionInterface>();
 	/** list of the streams */
@@ -112,14 +189,25 @@ public class LicodeConnector implements VideoConnectorInterface {
 			log("mOnAddStream");
 
 			try {
-				StreamDescription stream = StreamDescription.parseJson(args
-						.getJSONObject(0));
+				final StreamDescription stream = StreamDescription
+						.parseJson(args.getJSONObject(0));
+				final int attempt = mConnectAttempt.get();
 
-				boolean isLocal = mLocalStream.get(stream.getId()) != null;
-				if (!isLocal) {
-					mRemoteStream.put(stream.getId(), stream);
-					triggerStreamAdded(stream);
-				}
+				// in order with the stream list of the join
+				mStreamEvents.post(new Runnable() {
+					@Override
+					public void run() {
+						if (attempt != mConnectAttempt.get()) {
+							// the socket is gone, its list supersedes this
+							return;
+						}
+						boolean isLocal = mLocalStream.get(stream.getId()) != null;
+						if (!isLocal) {
+							mRemoteStream.put(stream.getId(), stream);
+							triggerStreamAdded(stream);
+						}
+					}
+				});
 			} catch (JSONException e) {
 			}
 		}
@@ -144,11 +232,17 @@ public class LicodeConnector implements VideoConnectorInterface {
 			try {
 				JSONObject param = args.getJSONObject(0);
 				String streamId = param.getString("id");
-				String message = param.getString("msg");
 				StreamDescriptionInterface stream = mRemoteStream.get(streamId);
-				for (RoomObserver obs : mObservers) {
-					obs.onStreamData(message, stream);
+				JSONObject binary = param.optJSONObject("msg");
+				if (binary != null && binary.has("binary")) {
+					onBinaryData(ByteBuffer.wrap(Base64.decode(
+							binary.getString("binary"), Base64.NO_WRAP)),
+							stream);
+					return;
 				}
+				String message = param.getString("msg");
+				mEvents.post(new RoomEvent(RoomEvent.Type.kStreamData, stream,
+						message, null));
 			} catch (JSONException e) {
 			}
 		}
@@ -161,15 +255,25 @@ public class LicodeConnector implements VideoConnectorInterface {
 
 			try {
 				JSONObject param = args.getJSONObject(0);
-				String streamId = param.getString("id");
-				StreamDescription stream = (StreamDescription) mRemoteStream
-						.get(streamId);
+				final String streamId = param.getString("id");
+				final int attempt = mConnectAttempt.get();
 
-				if (stream != null) {
-					removeStream(stream);
-					mRemoteStream.remove(streamId);
-					triggerStreamRemoved(stream);
-				}
+				// in order with the stream list of the join
+				mStreamEvents.post(new Runnable() {
+					@Override
+					public void run() {
+						if (attempt != mConnectAttempt.get()) {
+							return;
+						}
+						StreamDescription stream = (StreamDescription) mRemoteStream
+								.get(streamId);
+						if (stream != null) {
+							removeStream(stream);
+							mRemoteStream.remove(streamId);
+							triggerStreamRemoved(stream);
+						}
+					}
+				});
 			} catch (JSONException e) {
 			}
 		}
@@ -178,7 +282,20 @@ public class LicodeConnector implements VideoConnectorInterface {
 		@Override
 		public void onEvent(JSONArray args, Acknowledge ack) {
 			log("mDisconnect");
-			disconnect();
+			if (mReconnecting) {
+				// a connection given up by the reconnect attempts
+				return;
+			}
+			if (mAutoReconnect && mState == State.kConnected) {
+				sVcHandler.post(new Runnable() {
+					@Override
+					public void run() {
+						startReconnect();
+					}
+				});
+			} else {
+				disconnect();
+			}
 		}
 	};
 
@@ -221,6 +338,7 @@ public class LicodeConnector implements VideoConnectorInterface {
 
 		@Override
 		public void onIceCandidate(IceCandidate iceCandidate) {
+			mSdpObserver.onLocalCandidate(iceCandidate);
 		}
 
 		@Override
@@ -229,7 +347,35 @@ public class LicodeConnector implements VideoConnectorInterface {
 		}
 
 		@Override
-		public void onDataChannel(DataChannel arg0) {
+		public void onDataChannel(DataChannel channel) {
+			if (mSdpObserver.isLocal() || mDesc == null) {
+				return;
+			}
+			// receive only - sending is done on the published stream
+			DataStreamChannel data = new DataStreamChannel(channel,
+					sVcHandler, null);
+			data.setListener(new DataStreamChannel.Listener() {
+				@Override
+				public void onMessage(ByteBuffer data, boolean binary) {
+					if (binary) {
+						onBinaryData(data, mDesc);
+						return;
+					}
+					byte[] bytes = new byte[data.remaining()];
+					data.get(bytes);
+					try {
+						mEvents.post(new RoomEvent(RoomEvent.Type.kStreamData,
+								mDesc, new String(bytes, "UTF-8"), null));
+					} catch (UnsupportedEncodingException e) {
+					}
+				}
+
+				@Override
+				public void onWritable() {
+				}
+			});
+			// closed along with the subscriber connection
+			((StreamDescription) mDesc).setDataChannel(data);
 		}
 
 		@Override
@@ -240,6 +386,13 @@ public class LicodeConnector implements VideoConnectorInterface {
 			if (media.videoTracks.size() == 1 && mDesc != null) {
 				((StreamDescription) mDesc).setMedia(media);
 				triggerMediaAvailable(mDesc);
+				final String streamId = mDesc.getId();
+				sVcHandler.post(new Runnable() {
+					@Override
+					public void run() {
+						mSubscriptions.onMediaAvailable(streamId);
+					}
+				});
 			}
 
 		}
@@ -306,6 +459,42 @@ public class LicodeConnector implements VideoConnectorInterface {
 				sVcHandler = new Handler(vcthread.getLooper());
 			}
 		}
+		if (mEvents == null) {
+			mEvents = new RoomEventDispatcher(mObservers, sVcHandler);
+			if (mEventExecutor != null) {
+				mEvents.setExecutor(mEventExecutor);
+			}
+		}
+		if (mOutbox == null) {
+			mOutbox = new SignalingOutbox(sVcHandler);
+			mOutbox.setListener(mSignalingListener);
+		}
+		if (mStreamEvents == null) {
+			final Handler vcHandler = sVcHandler;
+			mStreamEvents = new StreamEventSequencer(new Executor() {
+				@Override
+				public void execute(Runnable command) {
+					vcHandler.post(command);
+				}
+			});
+		}
+		if (mSubscriptions == null) {
+			mSubscriptions = new SubscriptionScheduler(sVcHandler,
+					new SubscriptionScheduler.Starter() {
+						@Override
+						public boolean startSubscription(
+								StreamDescription stream) {
+							if (stream.getState() == StreamState.CLOSING
+									|| !mRemoteStream.containsKey(stream.getId())) {
+								return false;
+							}
+							doSubscribe(stream);
+							return true;
+						}
+					});
+			mSubscriptions.setMaxInFlight(mMaxSubscriptions);
+			mSubscriptions.setListener(mSubscriptionListener);
+		}
 		if (context == null) {
 			throw new NullPointerException(
 					"Failed to initialize LicodeConnector. Activity is required.");
@@ -338,6 +527,150 @@ public class LicodeConnector implements VideoConnectorInterface {
 	public void setBandwidthLimits(int video, int audio) {
 		mMaxVideoBW = video;
 		mMaxAudioBW = audio;
+		updateRateControllers();
+	}
+
+	@Override
+	public void addRateController(VpxRateController controller) {
+		mRateControllers.addIfAbsent(controller);
+		controller.setMaxBitrate(mMaxVideoBW);
+	}
+
+	@Override
+	public void removeRateController(VpxRateController controller) {
+		mRateControllers.remove(controller);
+	}
+
+	/** hand the video limit written into the sdp to the rate controllers */
+	private void updateRateControllers() {
+		for (VpxRateController controller : mRateControllers) {
+			controller.setMaxBitrate(mMaxVideoBW);
+		}
+	}
+
+	@Override
+	public void setSdpPolicy(SdpPolicy policy) {
+		mSdpPolicy = policy != null ? policy : SdpPolicy.none();
+	}
+
+	@Override
+	public void setTrickleIce(boolean enabled) {
+		mTrickleIce = enabled;
+	}
+
+	@Override
+	public void setNegotiationListener(NegotiationListener listener) {
+		mNegotiationListener = listener;
+	}
+
+	@Override
+	public void setDataChannelEnabled(boolean enabled) {
+		mDataChannelEnabled = enabled;
+	}
+
+	@Override
+	public void setDataStreamListener(DataStreamListener listener) {
+		mDataListener = listener;
+	}
+
+	@Override
+	public void setSignalingListener(SignalingListener listener) {
+		mSignalingListener = listener;
+		if (mOutbox != null) {
+			mOutbox.setListener(listener);
+		}
+	}
+
+	@Override
+	public int getSignalingQueueDepth() {
+		return mOutbox != null ? mOutbox.getDepth() : 0;
+	}
+
+	@Override
+	public boolean sendData(String message) {
+		try {
+			return sendData(ByteBuffer.wrap(message.getBytes("UTF-8")), false);
+		} catch (UnsupportedEncodingException e) {
+			return false;
+		}
+	}
+
+	@Override
+	public boolean sendData(ByteBuffer data) {
+		return sendData(data, true);
+	}
+
+	/** queue data on the published stream */
+	private boolean sendData(ByteBuffer data, boolean binary) {
+		DataStreamChannel channel = mLocalData;
+		return channel != null && channel.send(data, binary);
+	}
+
+	@Override
+	public long getDataBufferedAmount() {
+		DataStreamChannel channel = mLocalData;
+		return channel == null ? 0 : channel.getBufferedAmount();
+	}
+
+	/** binary data arrived on |stream| */
+	void onBinaryData(ByteBuffer data, StreamDescriptionInterface stream) {
+		DataStreamListener listener = mDataListener;
+		if (listener != null) {
+			listener.onStreamBinaryData(data, stream);
+		}
+	}
+
+	@Override
+	public void setEventExecutor(Executor executor) {
+		mEventExecutor = executor;
+		if (mEvents != null) {
+			mEvents.setExecutor(executor);
+		}
+	}
+
+	@Override
+	public void setAutoReconnect(boolean enabled) {
+		mAutoReconnect = enabled;
+	}
+
+	@Override
+	public void setReconnectListener(ReconnectListener listener) {
+		mReconnectListener = listener;
+	}
+
+	@Override
+	public int getReconnectCount() {
+		return mReconnectCount;
+	}
+
+	@Override
+	public void setMaxConcurrentSubscriptions(final int count) {
+		mMaxSubscriptions = count;
+		if (mSubscriptions == null) {
+			// applied by init()
+			return;
+		}
+		sVcHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				mSubscriptions.setMaxInFlight(mMaxSubscriptions);
+			}
+		});
+	}
+
+	@Override
+	public void setSubscriptionListener(final SubscriptionListener listener) {
+		mSubscriptionListener = listener;
+		if (mSubscriptions == null) {
+			// applied by init()
+			return;
+		}
+		sVcHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				mSubscriptions.setListener(mSubscriptionListener);
+			}
+		});
 	}
 
 	@Override
@@ -350,17 +683,19 @@ public class LicodeConnector implements VideoConnectorInterface {
 		}
 
 		mState = State.kConnecting;
+		mToken = token;
 		mActivity.runOnUiThread(new Runnable() {
 
 			@Override
 			public void run() {
-				createToken(token);
+				createToken(token, false);
 			}
 		});
 	}
 
 	/** sends a token - when required */
 	public void refreshVideoToken(String token) {
+		mToken = token;
 		token = LicodeConnector.decodeToken(token);
 		if (token == null) {
 			return;
@@ -370,7 +705,9 @@ public class LicodeConnector implements VideoConnectorInterface {
 			JSONObject jsonToken = new JSONObject(token);
 			handleTokenRefresh(jsonToken);
 
-			sendMessageSocket("refreshToken", jsonToken, new Acknowledge() {
+			// a newer token supersedes one still waiting to be sent
+			sendMessageSocket("refreshToken", jsonToken, "refreshToken",
+					SignalingOutbox.Coalesce.kReplace, 2, new Acknowledge() {
 				@Override
 				public void acknowledge(JSONArray arg0) {
 					// read publish right from result
@@ -394,24 +731,181 @@ public class LicodeConnector implements VideoConnectorInterface {
 				|| mState == State.kDisconnecting) {
 			return;
 		}
-		if (mState == State.kConnecting) {
-			// TODO dk: figure out how to handle this!
-		}
 
 		sVcHandler.post(new Runnable() {
 			@Override
 			public void run() {
+				// a pending reconnect attempt must not revive the connection
+				cancelReconnect();
 				doDisconnect();
 			}
 		});
 	}
 
+	/**
+	 * the signaling connection got lost - keep the peer connections and try
+	 * to resume the session - VC thread only
+	 */
+	void startReconnect() {
+		if (mReconnecting || mState != State.kConnected) {
+			return;
+		}
+		log("Licode: signaling lost, reconnecting");
+		mState = State.kConnecting;
+		mReconnecting = true;
+		mReconnectAttempt = 0;
+		mReconnectStart = System.nanoTime() / 1000000;
+		cancelReconnectTimeout();
+		dropSocket();
+		scheduleReconnect();
+	}
+
+	/** send the held messages with |client| while it is the current one */
+	private void resumeOutbox(SocketIOClient client) {
+		synchronized (mSocketLock) {
+			if (mIoClient == client) {
+				mOutbox.setClient(client);
+			}
+		}
+	}
+
+	/** forget the current socket.io connection */
+	private void dropSocket() {
+		SocketIOClient lost;
+		synchronized (mSocketLock) {
+			mConnectAttempt.incrementAndGet();
+			mStreamEvents.clear();
+			lost = mIoClient;
+			mIoClient = null;
+			// messages wait for the resumed session
+			mOutbox.setClient(null);
+		}
+		if (lost != null) {
+			lost.disconnect();
+		}
+	}
+
+	/** schedule the next reconnect attempt with exponential backoff */
+	void scheduleReconnect() {
+		cancelReconnectTimeout();
+		if (!mReconnecting) {
+			return;
+		}
+		if (mReconnectAttempt >= RECONNECT_MAX_ATTEMPTS) {
+			log("Licode: reconnect failed after " + mReconnectAttempt
+					+ " attempts");
+			mReconnecting = false;
+			ReconnectListener listener = mReconnectListener;
+			if (listener != null) {
+				listener.onReconnectFailed(mReconnectAttempt);
+			}
+			doDisconnect();
+			return;
+		}
+		long delay = Math.min(RECONNECT_MAX_DELAY_MS,
+				RECONNECT_BASE_DELAY_MS << mReconnectAttempt);
+		// spread the attempts of all clients cut off by the same outage
+		delay = delay / 2 + (long) (Math.random() * delay / 2);
+		++mReconnectAttempt;
+		ReconnectListener listener = mReconnectListener;
+		if (listener != null) {
+			listener.onReconnecting(mReconnectAttempt, delay);
+		}
+		mReconnectRunnable = new Runnable() {
+			@Override
+			public void run() {
+				if (!mReconnecting) {
+					return;
+				}
+				createToken(mToken, true);
+				// tied to this attempt's connection - a later session on a
+				// new socket must not be dropped by it
+				final int connect = mConnectAttempt.get();
+				mReconnectTimeout = new Runnable() {
+					@Override
+					public void run() {
+						mReconnectTimeout = null;
+						if (mReconnecting && mConnectAttempt.get() == connect) {
+							dropSocket();
+							scheduleReconnect();
+						}
+					}
+				};
+				sVcHandler.postDelayed(mReconnectTimeout,
+						RECONNECT_ATTEMPT_TIMEOUT_MS);
+			}
+		};
+		sVcHandler.postDelayed(mReconnectRunnable, delay);
+	}
+
+	/** stop reconnecting - VC thread only */
+	void cancelReconnect() {
+		mReconnecting = false;
+		if (mReconnectRunnable != null) {
+			sVcHandler.removeCallbacks(mReconnectRunnable);
+			mReconnectRunnable = null;
+		}
+		cancelReconnectTimeout();
+	}
+
+	/** forget the timeout of the running attempt - VC thread only */
+	private void cancelReconnectTimeout() {
+		if (mReconnectTimeout != null) {
+			sVcHandler.removeCallbacks(mReconnectTimeout);
+			mReconnectTimeout = null;
+		}
+	}
+
+	/**
+	 * the session was resumed, bring the streams in line with the server's
+	 * list - VC thread only
+	 */
+	void finishReconnect(JSONArray streams) {
+		if (!mReconnecting) {
+			return;
+		}
+		mReconnecting = false;
+		mReconnectRunnable = null;
+		cancelReconnectTimeout();
+		// offers and candidates held since the socket got lost belong to
+		// peer connections the new session does not know
+		mOutbox.dropPending(SESSION_INDEPENDENT_CHANNELS);
+		int kept = reconcileStreams(streams, true);
+
+		// licode drops the publishers of a socket along with it, while ice
+		// may still look connected for a while - only the server's list tells
+		// whether a publication survived
+		HashSet<String> listed = listedStreamIds(streams);
+		for (String key : mLocalStream.keySet()) {
+			if (!listed.contains(key)) {
+				// the server dropped the publication, start over
+				doUnpublish();
+				if (mPermissionPublish) {
+					triggerPublishAllowed();
+				}
+				break;
+			}
+			++kept;
+		}
+
+		++mReconnectCount;
+		long millis = System.nanoTime() / 1000000 - mReconnectStart;
+		log("Licode: reconnected after " + mReconnectAttempt + " attempts, "
+				+ millis + "ms, kept " + kept + " streams");
+		ReconnectListener listener = mReconnectListener;
+		if (listener != null) {
+			listener.onReconnected(mReconnectAttempt, millis, kept);
+		}
+	}
+
 	/** handle actual disconnecting - from ui thread only */
 	void doDisconnect() {
 		mState = State.kDisconnecting;
-		for (RoomObserver obs : mObservers) {
-			obs.onRoomDisconnected();
-		}
+		// late connects and stream events of this session are void
+		mConnectAttempt.incrementAndGet();
+		mStreamEvents.clear();
+		mEvents.post(new RoomEvent(RoomEvent.Type.kRoomDisconnected, null,
+				null, null));
 		Set<String> keyset = mRemoteStream.keySet();
 		for (String key : keyset) {
 			StreamDescription stream = (StreamDescription) mRemoteStream
@@ -420,6 +914,12 @@ public class LicodeConnector implements VideoConnectorInterface {
 			triggerStreamRemoved(stream);
 		}
 		mRemoteStream.clear();
+		sVcHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				mSubscriptions.clear();
+			}
+		});
 
 		if (mLocalStream.size() > 0) {
 			unpublish();
@@ -430,7 +930,16 @@ public class LicodeConnector implements VideoConnectorInterface {
 				mIoClient.disconnect();
 				mIoClient = null;
 			}
+			mOutbox.setClient(null);
 		}
+		// after the unpublish messages posted above - a left room owes the
+		// server nothing
+		sVcHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				mOutbox.clear();
+			}
+		});
 
 		mState = State.kDisconnected;
 	}
@@ -493,8 +1002,85 @@ public class LicodeConnector implements VideoConnectorInterface {
 		return null;
 	}
 
-	/** called with the connection token */
-	void createToken(String result) {
+	/** ids of the streams in a stream list of the server */
+	static HashSet<String> listedStreamIds(JSONArray streams) {
+		HashSet<String> ids = new HashSet<String>();
+		for (int index = 0, n = streams.length(); index < n; ++index) {
+			try {
+				String id = StreamDescription.parseJson(
+						streams.getJSONObject(index)).getId();
+				if (id != null) {
+					ids.add(id);
+				}
+			} catch (JSONException e) {
+			}
+		}
+		return ids;
+	}
+
+	/**
+	 * bring mRemoteStream in line with the server's stream list and announce
+	 * only the differences - streams still listed keep their description and
+	 * peer connection. With |resumed|, the session runs on a new socket:
+	 * licode dropped the subscriptions of the old one, so subscribed streams
+	 * are announced as removed and added again, to be subscribed anew.
+	 * 
+	 * @return number of remote streams kept - VC thread only
+	 */
+	int reconcileStreams(JSONArray streams, boolean resumed) {
+		// {"data":true,"id":897203996079042600,"screen":"","audio":true,"video":true}
+		HashMap<String, StreamDescription> listed = new HashMap<String, StreamDescription>();
+		ArrayList<String> order = new ArrayList<String>();
+		for (int index = 0, n = streams.length(); index < n; ++index) {
+			try {
+				StreamDescription stream = StreamDescription.parseJson(streams
+						.getJSONObject(index));
+				String id = stream.getId();
+				if (id != null && !mLocalStream.containsKey(id)
+						&& listed.put(id, stream) == null) {
+					order.add(id);
+				}
+			} catch (JSONException e) {
+			}
+		}
+
+		int kept = 0;
+		for (String key : mRemoteStream.keySet()) {
+			StreamDescription stream = (StreamDescription) mRemoteStream
+					.get(key);
+			StreamDescription listedStream = listed.remove(key);
+			if (listedStream != null && resumed && stream.pc != null) {
+				// its subscription did not survive - subscribed again as a new
+				// stream
+				listed.put(key, listedStream);
+				listedStream = null;
+			}
+			if (listedStream == null) {
+				mRemoteStream.remove(key);
+				removeStream(stream);
+				continue;
+			}
+			++kept;
+			if (stream.updateFrom(listedStream)) {
+				triggerStreamChanged(stream);
+			}
+		}
+
+		for (String id : order) {
+			StreamDescription stream = listed.get(id);
+			if (stream != null) {
+				mRemoteStream.put(id, stream);
+				triggerStreamAdded(stream);
+			}
+		}
+		return kept;
+	}
+
+	/**
+	 * called with the connection token; |resume| to reconnect a lost session,
+	 * keeping the streams
+	 */
+	void createToken(String result, final boolean resume) {
 		if (result == null) {
 			return;
 		}
@@ -504,20 +1090,35 @@ public class LicodeConnector implements VideoConnectorInterface {
 		}
 
 		try {
-			mRemoteStream.clear();
 			final JSONObject jsonToken = new JSONObject(token);
 			String host = jsonToken.getString("host");
 			if (!host.startsWith("http://")) {
 				host = "http://" + host;
 			}
 			handleTokenRefresh(jsonToken);
+			final int attempt = mConnectAttempt.incrementAndGet();
 			SocketIOClient.connect(AsyncHttpClient.getDefaultInstance(), host,
 					new ConnectCallback() {
 						@Override
 						public void onConnectCompleted(Exception err,
-								SocketIOClient client) {
+								final SocketIOClient client) {
 							if (err != null) {
 								err.printStackTrace();
+								if (resume && attempt == mConnectAttempt.get()) {
+									sVcHandler.post(new Runnable() {
+										@Override
+										public void run() {
+											scheduleReconnect();
+										}
+									});
+								}
+								return;
+							}
+
+							if (attempt != mConnectAttempt.get()) {
+								// timed out or superseded meanwhile
+								log("Licode: dropping stale connection");
+								client.disconnect();
 								return;
 							}
 
@@ -537,7 +1138,13 @@ public class LicodeConnector implements VideoConnectorInterface {
 								e.printStackTrace();
 							}
 							synchronized (mSocketLock) {
+								if (attempt != mConnectAttempt.get()) {
+									client.disconnect();
+									return;
+								}
 								mIoClient = client;
+								// stream events wait for the list of the join
+								mStreamEvents.hold();
 								client.on("onAddStream", mOnAddStream);
 								client.on("onSubscribeP2P", mOnSubscribeP2P);
 								client.on("onPublishP2P", mOnPublishP2P);
@@ -546,24 +1153,48 @@ public class LicodeConnector implements VideoConnectorInterface {
 								client.on("disconnect", mDisconnect);
 							}
 
-							sendMessageSocket("token", jsonToken,
+							// joins the session - must precede everything the
+							// outbox held back, so it does not go through it
+							JSONArray tokenArgs = new JSONArray();
+							tokenArgs.put(jsonToken);
+							client.emit("token", tokenArgs,
 									new Acknowledge() {
 										@Override
 										public void acknowledge(JSONArray result) {
 											log("Licode: createToken -> connect");
 											log(result.toString());
+											if (attempt != mConnectAttempt.get()) {
+												// the socket was dropped meanwhile
+												return;
+											}
 											try {
 												// ["success",{"maxVideoBW":300,"id":"5384684c918b864466c853d6","streams":[],"defaultVideoBW":300,"turnServer":{"password":"","username":"","url":""},"stunServerUrl":"stun:stun.l.google.com:19302"}]
 												// ["success",{"maxVideoBW":300,"id":"5384684c918b864466c853d6","streams":[{"data":true,"id":897203996079042600,"screen":"","audio":true,"video":true},{"data":true,"id":841680482029914900,"screen":"","audio":true,"video":true}],"defaultVideoBW":300,"turnServer":{"password":"","username":"","url":""},"stunServerUrl":"stun:stun.l.google.com:19302"}]
 												if ("success"
 														.equalsIgnoreCase(result
 																.getString(0)) == false) {
+													mStreamEvents.clear();
+													if (resume) {
+														// token used up or
+														// expired - a full
+														// rejoin is needed
+														sVcHandler
+																.post(new Runnable() {
+																	@Override
+																	public void run() {
+																		mReconnectAttempt = RECONNECT_MAX_ATTEMPTS;
+																		scheduleReconnect();
+																	}
+																});
+													}
 													return;
 												}
 
 												JSONObject jsonObject = result
 														.getJSONObject(1);
 												parseVideoTokenResponse(result);
+												// rebuilt on every join
+												mIceServers = new ArrayList<PeerConnection.IceServer>();
 
 												if (jsonObject
 														.has("turnServer")) {
@@ -603,34 +1234,58 @@ public class LicodeConnector implements VideoConnectorInterface {
 														.has("maxVideoBW")) {
 													mMaxVideoBW = jsonObject
 															.getInt("maxVideoBW");
+													updateRateControllers();
+												}
+												mServerSinglePc = jsonObject
+														.optBoolean("singlePC",
+																false);
+												if (mServerSinglePc) {
+													log("Licode: server offers a shared peer connection - using one connection per stream");
 												}
 
 												mState = State.kConnected;
+												if (!resume) {
+													resumeOutbox(client);
+												}
 
 												// update room id
 												mRoomId = jsonObject
 														.getString("id");
 
-												for (RoomObserver obs : mObservers) {
-													obs.onRoomConnected(mRemoteStream);
+												if (resume) {
+													final JSONArray streams = jsonObject
+															.getJSONArray("streams");
+													mStreamEvents
+															.postList(new Runnable() {
+																@Override
+																public void run() {
+																	finishReconnect(streams);
+																	// what is left belongs to
+																	// the resumed session
+																	resumeOutbox(client);
+																}
+															});
+													return;
 												}
 
-												// retrieve list of streams
-												JSONArray streams = jsonObject
+												mEvents.post(new RoomEvent(
+														RoomEvent.Type.kRoomConnected,
+														null, null,
+														mRemoteStream));
+
+												// only announce what differs
+												// from the streams known
+												final JSONArray streams = jsonObject
 														.getJSONArray("streams");
-												for (int index = 0, n = streams
-														.length(); index < n; ++index) {
-													// {"data":true,"id":897203996079042600,"screen":"","audio":true,"video":true}
-													JSONObject arg = streams
-															.getJSONObject(index);
-													StreamDescription stream = StreamDescription
-															.parseJson(arg);
-													mRemoteStream.put(
-															stream.getId(),
-															stream);
-													triggerStreamAdded(stream);
-												}
+												mStreamEvents.postList(new Runnable() {
+													@Override
+													public void run() {
+														reconcileStreams(
+																streams, false);
+													}
+												});
 											} catch (JSONException e) {
+												mStreamEvents.clear();
 											}
 										}
 									});
@@ -642,48 +1297,58 @@ public class LicodeConnector implements VideoConnectorInterface {
 
 	/** send a json something on the specified channel via socket.io */
 	void sendMessageSocket(String channel, Object param, Acknowledge ack) {
-		synchronized (mSocketLock) {
-			if (mIoClient == null) {
-				return;
-			}
-			JSONArray jsonArgs = new JSONArray();
-			jsonArgs.put(param);
-			if (ack == null) {
-				ack = new Acknowledge() {
-					@Override
-					public void acknowledge(JSONArray arg0) {
-						log("LicodeConnector: No one interested in response: "
-								+ arg0.toString());
-					}
-				};
-			}
-			mIoClient.emit(channel, jsonArgs, ack);
+		sendMessageSocket(channel, param, null, SignalingOutbox.Coalesce.kNone,
+				0, ack);
+	}
+
+	/**
+	 * send a json something on the specified channel via socket.io; |key| and
+	 * |coalesce| relate it to unsent messages, it is repeated up to |retries|
+	 * times when not acknowledged
+	 */
+	void sendMessageSocket(String channel, Object param, String key,
+			SignalingOutbox.Coalesce coalesce, int retries, Acknowledge ack) {
+		JSONArray jsonArgs = new JSONArray();
+		jsonArgs.put(param);
+		if (ack == null) {
+			ack = new Acknowledge() {
+				@Override
+				public void acknowledge(JSONArray arg0) {
+					log("LicodeConnector: No one interested in response: "
+							+ arg0.toString());
+				}
+			};
 		}
+		mOutbox.send(channel, jsonArgs, ack, key, coalesce, retries);
 	}
 
 	void sendSDPSocket(String type, JSONObject param0, JSONObject param1,
 			Acknowledge ack) {
-		synchronized (mSocketLock) {
-			if (mIoClient == null) {
-				return;
-			}
-			JSONArray jsonArgs = new JSONArray();
-			jsonArgs.put(param0);
-			jsonArgs.put(param1);
-			mIoClient.emit(type, jsonArgs, ack);
-		}
+		sendSDPSocket(type, param0, param1, null, ack);
+	}
+
+	/** an offer keyed with |key| replaces an unsent one with the same key */
+	void sendSDPSocket(String type, JSONObject param0, JSONObject param1,
+			String key, Acknowledge ack) {
+		JSONArray jsonArgs = new JSONArray();
+		jsonArgs.put(param0);
+		jsonArgs.put(param1);
+		mOutbox.send(type, jsonArgs, ack, key,
+				key != null ? SignalingOutbox.Coalesce.kReplace
+						: SignalingOutbox.Coalesce.kNone, 0);
 	}
 
 	void sendSDPSocket(String type, JSONArray params, Acknowledge ack) {
-		synchronized (mSocketLock) {
-			if (mIoClient == null) {
-				return;
-			}
-			mIoClient.emit(type, params, ack);
-		}
+		mOutbox.send(type, params, ack, null, SignalingOutbox.Coalesce.kNone,
+				0);
+	}
+
+	/** key relating the subscribe offer and the unsubscribe of a stream */
+	static String subscriptionKey(String streamId) {
+		return "subscribe:" + streamId;
 	}
 
-	void sendDataSocket(String streamId, String message) {
+	void sendDataSocket(String streamId, Object message) {
 		JSONObject param = new JSONObject();
 		try {
 			param.put("id", streamId);
@@ -694,8 +1359,18 @@ public class LicodeConnector implements VideoConnectorInterface {
 		sendMessageSocket("sendDataStream", param, null);
 	}
 
-	void removeStream(StreamDescription stream) {
+	void removeStream(final StreamDescription stream) {
 		stream.onClosing();
+		if (!stream.isLocal()) {
+			// stop waiting for, or free the slot of, its negotiation
+			sVcHandler.post(new Runnable() {
+				@Override
+				public void run() {
+					mSubscriptions.cancel(stream.getId());
+					stream.closeDataChannel();
+				}
+			});
+		}
 		triggerStreamRemoved(stream);
 	}
 
@@ -755,6 +1430,10 @@ public class LicodeConnector implements VideoConnectorInterface {
 	public static class VideoCallbacks implements VideoRenderer.Callbacks {
 		private final VideoStreamsView view;
 		private final String streamId;
+		/** handle of the stream in the view, looked up again once stale */
+		private volatile int handle = VideoStreamsView.INVALID_HANDLE;
+		/** registrations of the view at the last lookup of the handle */
+		private int registrations = -1;
 
 		public VideoCallbacks(VideoStreamsView view, String streamId) {
 			this.view = view;
@@ -772,7 +1451,18 @@ public class LicodeConnector implements VideoConnectorInterface {
 
 		@Override
 		public void renderFrame(I420Frame frame) {
-			view.queueFrame(streamId, frame);
+			if (view.queueFrame(handle, frame)) {
+				return;
+			}
+			// a stream not in the view is only looked up again once the view
+			// handed out a new handle, not on every frame
+			int current = view.getRegistrations();
+			if (current == registrations) {
+				return;
+			}
+			registrations = current;
+			handle = view.getStreamHandle(streamId);
+			view.queueFrame(handle, frame);
 		}
 	}
 
@@ -791,74 +1481,194 @@ public class LicodeConnector implements VideoConnectorInterface {
 		private int mAnswererSessionId = 0;
 		/** tracks if ice candidates are all collected */
 		boolean mIceReady = false;
+		/** the negotiation step in progress, null before start and when done */
+		private NegotiationPhase mPhase = null;
+		/** when mPhase began, in ms */
+		private long mPhaseStart = 0;
+		/** whether candidates are trickled instead of waiting for all */
+		final boolean mTrickle;
+		/** candidates waiting for the server to know the stream */
+		private ArrayList<JSONObject> mPendingCandidates = new ArrayList<JSONObject>();
 
 		/** create an observer for given stream */
 		LicodeSdpObserver(StreamDescription stream, boolean publishing) {
 			mStream = stream;
 			mIsPublish = publishing;
 			mSignalChannel = mIsPublish ? "publish" : "subscribe";
+			mTrickle = mTrickleIce;
 		}
 
 		public boolean isLocal() {
 			return mStream == null ? false : mStream.isLocal();
 		}
 
-		/** waits for ice candidates to be gathered before triggering release */
+		/** create the one offer of this stream */
+		void start() {
+			beginPhase(NegotiationPhase.kCreateOffer);
+			mStream.pc.createOffer(this, mStream.sdpConstraints());
+		}
+
+		/** ice candidates are all gathered */
 		public void iceReady() {
-			mIceReady = true;
-			startConnecting();
+			if (mTrickle) {
+				mIceReady = true;
+				// the offer is out already, tell the server gathering is done
+				sendCandidate("end");
+				return;
+			}
+			boolean gathering;
+			synchronized (this) {
+				mIceReady = true;
+				gathering = mPhase == NegotiationPhase.kGather;
+			}
+			if (gathering) {
+				sendGathered();
+			}
 		}
 
-		private void startConnecting() {
-			mStream.pc.createOffer(this, mStream.sdpConstraints());
+		/**
+		 * send the local description including all candidates, once gathering
+		 * is complete and the description is set
+		 */
+		private void sendGathered() {
+			endPhase(NegotiationPhase.kGather);
+			mActivity.runOnUiThread(new Runnable() {
+				@Override
+				public void run() {
+					// the set description plus the gathered candidates
+					SessionDescription gathered = mStream.pc
+							.getLocalDescription();
+					if (gathered != null) {
+						mLocalSdp = gathered;
+					}
+					sendLocalDescription();
+				}
+			});
 		}
 
-		@Override
-		public void onCreateFailure(String arg0) {
-			log("SdpObserver#onCreateFailure: " + arg0);
+		/** enter a phase of the negotiation */
+		private synchronized void beginPhase(NegotiationPhase phase) {
+			mPhase = phase;
+			mPhaseStart = System.nanoTime() / 1000000;
 		}
 
-		private SessionDescription modifySdpMaxBW(SessionDescription sdp) {
-			StringBuffer desc = new StringBuffer();
-			int audioLine = -1;
-			int videoLine = -1;
-			ArrayList<Integer> bLines = new ArrayList<Integer>();
-			String[] lines = sdp.description.split("\r\n");
-			for (int i = 0; i < lines.length; ++i) {
-				if (lines[i].startsWith("m=audio")) {
-					audioLine = i;
-				} else if (lines[i].startsWith("m=video")) {
-					videoLine = i;
-				} else if (lines[i].startsWith("b=AS:")) {
-					bLines.add(i);
+		/** leave |phase| and report its duration */
+		private void endPhase(NegotiationPhase phase) {
+			long millis;
+			synchronized (this) {
+				if (mPhase != phase) {
+					return;
 				}
+				mPhase = null;
+				millis = System.nanoTime() / 1000000 - mPhaseStart;
 			}
-			// TODO dk: this may want to check for existing B-Lines!
-			boolean addVideoB = mMaxVideoBW > 0;
-			boolean addAudioB = mMaxAudioBW > 0;
-			for (int i = 0; i < lines.length; ++i) {
-				desc.append(lines[i]);
-				desc.append("\r\n");
-				if (i == audioLine && addAudioB) {
-					desc.append("b=AS:" + mMaxAudioBW + "\r\n");
-				} else if (i == videoLine && addVideoB) {
-					desc.append("b=AS:" + mMaxVideoBW + "\r\n");
-				}
+			NegotiationListener listener = mNegotiationListener;
+			if (listener != null) {
+				listener.onNegotiationPhase(mStream, phase, millis);
 			}
+		}
 
-			return new SessionDescription(sdp.type, desc.toString());
+		/** the negotiation failed in the current phase */
+		private void failPhase(String error) {
+			NegotiationPhase phase;
+			synchronized (this) {
+				phase = mPhase;
+				mPhase = null;
+			}
+			NegotiationListener listener = mNegotiationListener;
+			if (listener != null && phase != null) {
+				listener.onNegotiationFailed(mStream, phase, error);
+			}
+			if (!mIsPublish) {
+				final String streamId = mStream.getId();
+				sVcHandler.post(new Runnable() {
+					@Override
+					public void run() {
+						mSubscriptions.onFailed(streamId);
+					}
+				});
+			}
 		}
 
-		@Override
-		public void onCreateSuccess(SessionDescription sdp) {
-			if (mLocalSdp != null) {
+		/** a local candidate was gathered - trickled to the server if enabled */
+		void onLocalCandidate(IceCandidate candidate) {
+			if (!mTrickle) {
+				// part of the local description sent once gathering is complete
 				return;
 			}
+			JSONObject json = new JSONObject();
+			try {
+				json.put("sdpMLineIndex", candidate.sdpMLineIndex);
+				json.put("sdpMid", candidate.sdpMid);
+				json.put("candidate", candidate.sdp);
+			} catch (JSONException e) {
+			}
+			sendCandidate(json);
+		}
+
+		/** send or queue a candidate until the server knows the stream */
+		private void sendCandidate(Object candidate) {
+			synchronized (this) {
+				if (mPendingCandidates != null) {
+					JSONObject queued = new JSONObject();
+					try {
+						queued.put("candidate", candidate);
+					} catch (JSONException e) {
+					}
+					mPendingCandidates.add(queued);
+					return;
+				}
+			}
+			sendSignalingMessage(candidate);
+		}
 
-			if (mIceReady) {
-				mLocalSdp = sdp;
+		/** the server knows the stream now, send the queued candidates */
+		private void flushCandidates() {
+			ArrayList<JSONObject> pending;
+			synchronized (this) {
+				pending = mPendingCandidates;
+				mPendingCandidates = null;
+			}
+			if (pending == null) {
+				return;
 			}
-			final SessionDescription finalSdp = modifySdpMaxBW(sdp);
+			for (JSONObject queued : pending) {
+				sendSignalingMessage(queued.opt("candidate"));
+			}
+		}
+
+		private void sendSignalingMessage(Object candidate) {
+			JSONObject param = new JSONObject();
+			try {
+				JSONObject msg = new JSONObject();
+				msg.put("type", "candidate");
+				msg.put("candidate", candidate);
+				param.put("streamId", mStream.getId());
+				param.put("msg", msg);
+			} catch (JSONException e) {
+			}
+			sendMessageSocket("signaling_message", param, null);
+		}
+
+		@Override
+		public void onCreateFailure(String arg0) {
+			log("SdpObserver#onCreateFailure: " + arg0);
+			failPhase(arg0);
+		}
+
+		/** apply the sdp policy and bandwidth limits to a local description */
+		private SessionDescription modifySdp(SessionDescription sdp) {
+			return new SessionDescription(sdp.type, mSdpPolicy.apply(
+					sdp.description, mMaxAudioBW, mMaxVideoBW));
+		}
+
+		@Override
+		public void onCreateSuccess(SessionDescription sdp) {
+			endPhase(NegotiationPhase.kCreateOffer);
+			final SessionDescription finalSdp = modifySdp(sdp);
+			// the server gets the same trimmed sdp that is set locally
+			mLocalSdp = finalSdp;
+			beginPhase(NegotiationPhase.kSetLocal);
 			mActivity.runOnUiThread(new Runnable() {
 				@Override
 				public void run() {
@@ -871,25 +1681,46 @@ public class LicodeConnector implements VideoConnectorInterface {
 		@Override
 		public void onSetFailure(String arg0) {
 			log("SdpObserver#onSetFailure: " + arg0);
+			failPhase(arg0);
 		}
 
 		@Override
 		public void onSetSuccess() {
-			if (mLocalSdp == null) {
-				return;
+			NegotiationPhase phase;
+			synchronized (this) {
+				phase = mPhase;
 			}
-			mActivity.runOnUiThread(new Runnable() {
-				@Override
-				public void run() {
-					if (mStream.pc.getRemoteDescription() == null) {
-						sendLocalDescription();
-					} else {
+			if (phase == NegotiationPhase.kSetLocal) {
+				endPhase(phase);
+				if (mTrickle) {
+					mActivity.runOnUiThread(new Runnable() {
+						@Override
+						public void run() {
+							sendLocalDescription();
+						}
+					});
+					return;
+				}
+				boolean gathered;
+				synchronized (this) {
+					beginPhase(NegotiationPhase.kGather);
+					gathered = mIceReady;
+				}
+				if (gathered) {
+					// gathering finished before the description was set
+					sendGathered();
+				}
+			} else if (phase == NegotiationPhase.kSetRemote) {
+				endPhase(phase);
+				mActivity.runOnUiThread(new Runnable() {
+					@Override
+					public void run() {
 						// drain remote candidates?!
 						// also confirm exchange with licode server!
 						sendConfirmation();
 					}
-				}
-			});
+				});
+			}
 		}
 
 		void sendLocalDescription() {
@@ -916,11 +1747,15 @@ public class LicodeConnector implements VideoConnectorInterface {
 			}
 			log("SdpObserver#sendLocalDescription; to: " + mSignalChannel
 					+ "; msg: " + p1.toString());
-			sendSDPSocket(mSignalChannel, desc, p1, new Acknowledge() {
+			beginPhase(NegotiationPhase.kServerAnswer);
+			// an offer of a stream unsubscribed before it was sent is dropped
+			sendSDPSocket(mSignalChannel, desc, p1, mIsPublish ? null
+					: subscriptionKey(mStream.getId()), new Acknowledge() {
 				@Override
 				public void acknowledge(JSONArray arg0) {
 					log("SdpObserver#sendLocalDescription#sendSDPSocket#Acknowledge: "
 							+ arg0.toString());
+					endPhase(NegotiationPhase.kServerAnswer);
 
 					String streamId = null;
 					SessionDescription remoteSdp = null;
@@ -952,9 +1787,12 @@ public class LicodeConnector implements VideoConnectorInterface {
 					if (mIsPublish) {
 						mStream.setId(streamId);
 						mLocalStream.put(streamId, mStream);
+						// candidates need the stream id assigned just now
+						flushCandidates();
 					}
 
 					final SessionDescription finalRemoteSdp = remoteSdp;
+					beginPhase(NegotiationPhase.kSetRemote);
 					mActivity.runOnUiThread(new Runnable() {
 						@Override
 						public void run() {
@@ -964,6 +1802,11 @@ public class LicodeConnector implements VideoConnectorInterface {
 					});
 				}
 			});
+			if (!mIsPublish) {
+				// the subscribed stream id is known, socket.io keeps the
+				// candidates behind the offer
+				flushCandidates();
+			}
 		}
 
 		void sendConfirmation() {
@@ -1048,13 +1891,53 @@ public class LicodeConnector implements VideoConnectorInterface {
 		PeerConnection pc = sFactory.createPeerConnection(mIceServers,
 				pcConstraints, pcObs);
 		pc.addStream(lMS, new MediaConstraints());
+		// created before the offer, so it is negotiated with the media
+		DataChannel channel = mDataChannelEnabled ? pc.createDataChannel(
+				"licode-data", new DataChannel.Init()) : null;
+		final StreamDescription published = stream;
+		mLocalData = new DataStreamChannel(channel, sVcHandler,
+				new DataStreamChannel.Fallback() {
+					@Override
+					public void send(ByteBuffer data, boolean binary) {
+						byte[] bytes = new byte[data.remaining()];
+						data.get(bytes);
+						try {
+							if (binary) {
+								JSONObject message = new JSONObject();
+								message.put("binary", Base64.encodeToString(
+										bytes, Base64.NO_WRAP));
+								sendDataSocket(published.getId(), message);
+							} else {
+								sendDataSocket(published.getId(), new String(
+										bytes, "UTF-8"));
+							}
+						} catch (JSONException e) {
+						} catch (UnsupportedEncodingException e) {
+						}
+					}
+				});
+		mLocalData.setListener(new DataStreamChannel.Listener() {
+			@Override
+			public void onMessage(ByteBuffer data, boolean binary) {
+				// our own data, nothing to do
+			}
+
+			@Override
+			public void onWritable() {
+				DataStreamListener listener = mDataListener;
+				if (listener != null) {
+					listener.onDataWritable();
+				}
+			}
+		});
 
 		stream.setMedia(lMS);
 		if (view != null) {
 			stream.attachRenderer(new VideoCallbacks(view,
 					VideoStreamsView.LOCAL_STREAM_ID));
 		}
-		stream.initLocal(pc, pcObs.getSdpObserver());
+		stream.initLocal(pc);
+		pcObs.getSdpObserver().start();
 	}
 
 	@Override
@@ -1074,9 +1957,8 @@ public class LicodeConnector implements VideoConnectorInterface {
 			if (stream != null && stream.isLocal()) {
 				stream.pc.removeStream(lMS);
 
-				for (RoomObserver obs : mObservers) {
-					obs.onStreamRemoved(stream);
-				}
+				mEvents.post(new RoomEvent(RoomEvent.Type.kStreamRemoved,
+						stream, null, null));
 
 				if (mObservers.size() == 0) {
 					destroy(stream);
@@ -1084,6 +1966,10 @@ public class LicodeConnector implements VideoConnectorInterface {
 			}
 		}
 		mLocalStream.clear();
+		if (mLocalData != null) {
+			mLocalData.close();
+			mLocalData = null;
+		}
 
 		if (lMS != null) {
 			lMS.dispose();
@@ -1101,11 +1987,45 @@ public class LicodeConnector implements VideoConnectorInterface {
 	}
 
 	@Override
-	public void subscribe(final StreamDescriptionInterface stream) {
+	public void subscribe(StreamDescriptionInterface stream) {
+		subscribe(stream, SUBSCRIBE_PRIORITY_NORMAL);
+	}
+
+	@Override
+	public void subscribe(final StreamDescriptionInterface stream,
+			final int priority) {
 		sVcHandler.post(new Runnable() {
 			@Override
 			public void run() {
-				doSubscribe((StreamDescription) stream);
+				if (stream.isLocal()) {
+					return;
+				}
+				if (((StreamDescription) stream).getMedia() != null) {
+					// already subscribed!
+					triggerMediaAvailable(stream);
+					return;
+				}
+				mSubscriptions.submit((StreamDescription) stream, priority);
+			}
+		});
+	}
+
+	@Override
+	public boolean isSinglePeerConnectionSupported() {
+		return mServerSinglePc;
+	}
+
+	@Override
+	public void setSubscribePriority(final String streamId,
+			final int priority) {
+		if (mSubscriptions == null) {
+			// nothing is queued before init()
+			return;
+		}
+		sVcHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				mSubscriptions.setPriority(streamId, priority);
 			}
 		});
 	}
@@ -1127,12 +2047,17 @@ public class LicodeConnector implements VideoConnectorInterface {
 		// EnumSet.of(Logging.TraceLevel.TRACE_ALL),
 		// Logging.Severity.LS_SENSITIVE);
 
+		// one connection per subscription, also where mServerSinglePc is set
+		// - the roap offer/answer exchange with licode negotiates each stream
+		// on its own, there is no message to add a stream to an existing
+		// connection
 		MyPcObserver pcObs = new MyPcObserver(new LicodeSdpObserver(stream,
 				false), stream);
 		PeerConnection pc = sFactory.createPeerConnection(mIceServers,
 				makePcConstraints(), pcObs);
 
-		stream.initRemote(pc, pcObs.getSdpObserver());
+		stream.initRemote(pc);
+		pcObs.getSdpObserver().start();
 	}
 
 	/**
@@ -1140,16 +2065,17 @@ public class LicodeConnector implements VideoConnectorInterface {
 	 * delay
 	 */
 	void triggerStreamAdded(StreamDescription stream) {
-		for (RoomObserver obs : mObservers) {
-			obs.onStreamAdded(stream);
-		}
+		mEvents.post(new RoomEvent(RoomEvent.Type.kStreamAdded, stream, null, null));
+	}
+
+	/** triggers the event that the description of a stream changed */
+	void triggerStreamChanged(StreamDescription stream) {
+		mEvents.post(new RoomEvent(RoomEvent.Type.kStreamChanged, stream, null, null));
 	}
 
 	/** triggers the event that a stream was removed */
 	void triggerStreamRemoved(StreamDescription stream) {
-		for (RoomObserver obs : mObservers) {
-			obs.onStreamRemoved(stream);
-		}
+		mEvents.post(new RoomEvent(RoomEvent.Type.kStreamRemoved, stream, null, null));
 		if (mObservers.size() == 0) {
 			destroy(stream);
 		}
@@ -1157,9 +2083,8 @@ public class LicodeConnector implements VideoConnectorInterface {
 
 	/** triggers the event that publish has been allowed now */
 	void triggerPublishAllowed() {
-		for (RoomObserver obs : mObservers) {
-			obs.onPublishAllowed();
-		}
+		mEvents.post(new RoomEvent(RoomEvent.Type.kPublishAllowed, null, null,
+				null));
 	}
 
 	/**
@@ -1167,9 +2092,7 @@ public class LicodeConnector implements VideoConnectorInterface {
 	 * stream
 	 */
 	void triggerMediaAvailable(StreamDescriptionInterface stream) {
-		for (RoomObserver obs : mObservers) {
-			obs.onStreamMediaAvailable(stream);
-		}
+		mEvents.post(new RoomEvent(RoomEvent.Type.kStreamMediaAvailable, stream, null, null));
 	}
 
 	/**
@@ -1177,9 +2100,8 @@ public class LicodeConnector implements VideoConnectorInterface {
 	 * connection will end
 	 */
 	void triggerRequestVideoToken() {
-		for (RoomObserver obs : mObservers) {
-			obs.onRequestRefreshToken();
-		}
+		mEvents.post(new RoomEvent(RoomEvent.Type.kRequestRefreshToken, null,
+				null, null));
 	}
 
 	@Override
@@ -1191,6 +2113,7 @@ public class LicodeConnector implements VideoConnectorInterface {
 		sVcHandler.post(new Runnable() {
 			@Override
 			public void run() {
+				stream.closeDataChannel();
 				if (stream.pc != null) {
 					stream.pc.close();
 					stream.pc.dispose();
@@ -1214,9 +2137,18 @@ public class LicodeConnector implements VideoConnectorInterface {
 		sVcHandler.post(new Runnable() {
 			@Override
 			public void run() {
-				sendMessageSocket("unsubscribe", stream.getId(), null);
+				mSubscriptions.cancel(stream.getId());
+				if (stream.pc == null) {
+					// was still waiting for its turn
+					return;
+				}
+				// cancels the subscribe offer if that is still waiting
+				sendMessageSocket("unsubscribe", stream.getId(),
+						subscriptionKey(stream.getId()),
+						SignalingOutbox.Coalesce.kCancel, 0, null);
 				stream.detachRenderer();
 
+				stream.closeDataChannel();
 				stream.pc.close();
 				stream.pc.dispose();
 				stream.onDisable();
@@ -0,0 +1,81 @@
+package com.example.licodeclient;
+
+import java.util.Map;
+
+import com.example.licodeclient.VideoConnectorInterface.RoomObserver;
+
+/**
+ * A single room event as delivered to batch observers, mirroring the
+ * callbacks of RoomObserver.
+ */
+public final class RoomEvent {
+	/** the RoomObserver callback an event corresponds to */
+	public enum Type {
+		kRoomConnected, kRoomDisconnected, kPublishAllowed, kStreamAdded, kStreamChanged, kStreamRemoved, kStreamMediaAvailable, kStreamData, kRequestRefreshToken
+	}
+
+	private final Type mType;
+	private final StreamDescriptionInterface mStream;
+	private final String mMessage;
+	private final Map<String, StreamDescriptionInterface> mStreams;
+
+	RoomEvent(Type type, StreamDescriptionInterface stream, String message,
+			Map<String, StreamDescriptionInterface> streams) {
+		mType = type;
+		mStream = stream;
+		mMessage = message;
+		mStreams = streams;
+	}
+
+	public Type getType() {
+		return mType;
+	}
+
+	/** the stream concerned, null for room wide events */
+	public StreamDescriptionInterface getStream() {
+		return mStream;
+	}
+
+	/** the data of a kStreamData event */
+	public String getMessage() {
+		return mMessage;
+	}
+
+	/** the streams in the room for a kRoomConnected event */
+	public Map<String, StreamDescriptionInterface> getStreams() {
+		return mStreams;
+	}
+
+	/** call the matching callback of |observer| */
+	public void deliverTo(RoomObserver observer) {
+		switch (mType) {
+		case kRoomConnected:
+			observer.onRoomConnected(mStreams);
+			break;
+		case kRoomDisconnected:
+			observer.onRoomDisconnected();
+			break;
+		case kPublishAllowed:
+			observer.onPublishAllowed();
+			break;
+		case kStreamAdded:
+			observer.onStreamAdded(mStream);
+			break;
+		case kStreamChanged:
+			observer.onStreamChanged(mStream);
+			break;
+		case kStreamRemoved:
+			observer.onStreamRemoved(mStream);
+			break;
+		case kStreamMediaAvailable:
+			observer.onStreamMediaAvailable(mStream);
+			break;
+		case kStreamData:
+			observer.onStreamData(mMessage, mStream);
+			break;
+		case kRequestRefreshToken:
+			observer.onRequestRefreshToken();
+			break;
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package com.example.licodeclient;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.example.licodeclient.VideoConnectorInterface.RoomBatchObserver;
+import com.example.licodeclient.VideoConnectorInterface.RoomObserver;
+
+/**
+ * Collects room events raised on the socket.io and connector threads for one
+ * frame interval and hands them to the observers as one batch on the chosen
+ * executor - the ui thread by default. A room with many streams joined at once
+ * thus costs the ui one message, not one per stream. Events keep their order.
+ */
+class RoomEventDispatcher {
+	/** time events are collected before delivery, about one frame */
+	private static final long BATCH_INTERVAL_MS = 16;
+
+	private final Collection<RoomObserver> mObservers;
+	/** runs the delayed flush */
+	private final Handler mTimer;
+	private volatile Executor mExecutor;
+	/** events waiting for the next flush */
+	private ArrayList<RoomEvent> mPending = new ArrayList<RoomEvent>();
+
+	private final Runnable mFlush = new Runnable() {
+		@Override
+		public void run() {
+			final List<RoomEvent> batch;
+			synchronized (RoomEventDispatcher.this) {
+				batch = Collections.unmodifiableList(mPending);
+				mPending = new ArrayList<RoomEvent>();
+			}
+			mExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					deliver(batch);
+				}
+			});
+		}
+	};
+
+	RoomEventDispatcher(Collection<RoomObserver> observers, Handler timer) {
+		mObservers = observers;
+		mTimer = timer;
+		final Handler main = new Handler(Looper.getMainLooper());
+		mExecutor = new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				main.post(command);
+			}
+		};
+	}
+
+	/** deliver batches with |executor| from now on */
+	void setExecutor(Executor executor) {
+		mExecutor = executor;
+	}
+
+	/** queue an event for the next batch */
+	void post(RoomEvent event) {
+		boolean first;
+		synchronized (this) {
+			first = mPending.isEmpty();
+			mPending.add(event);
+		}
+		if (first) {
+			mTimer.postDelayed(mFlush, BATCH_INTERVAL_MS);
+		}
+	}
+
+	private void deliver(List<RoomEvent> batch) {
+		for (RoomObserver observer : mObservers) {
+			if (observer instanceof RoomBatchObserver) {
+				((RoomBatchObserver) observer).onRoomEvents(batch);
+			} else {
+				for (RoomEvent event : batch) {
+					event.deliverTo(observer);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package com.example.licodeclient;
+
+/**
+ * Describes how local descriptions are trimmed before they are set and sent
+ * to licode: which video codec goes first and with which payload type, which
+ * audio codecs are offered at all, and which header extensions and rtcp
+ * feedback lines are kept. Everything libjingle offers beyond that only
+ * enlarges the socket.io messages and the sdp the server has to parse.
+ */
+public class SdpPolicy {
+	/** audio codecs kept by default */
+	public static final String[] DEFAULT_AUDIO_CODECS = { "opus", "PCMU",
+			"PCMA", "telephone-event" };
+	/** rtcp feedback kept by default - covers nack, nack pli and ccm fir */
+	public static final String[] DEFAULT_RTCP_FEEDBACK = { "nack", "ccm fir",
+			"goog-remb" };
+
+	/** video codec moved to the front, null to keep libjingle's order */
+	private String mVideoCodec = "VP8";
+	/** payload type given to mVideoCodec, -1 to keep libjingle's */
+	private int mVideoPayloadType = -1;
+	/** audio codecs kept, null to keep all */
+	private String[] mAudioCodecs = DEFAULT_AUDIO_CODECS;
+	/** rtcp-fb values kept, null to keep all */
+	private String[] mRtcpFeedback = DEFAULT_RTCP_FEEDBACK;
+	/** whether a=extmap lines are removed */
+	private boolean mStripExtensions = true;
+	/** whether b=TIAS is written next to b=AS */
+	private boolean mTias = false;
+
+	/** a policy leaving everything but the bandwidth lines alone */
+	public static SdpPolicy none() {
+		return new SdpPolicy().setVideoCodec(null, -1)
+				.setAudioCodecs((String[]) null)
+				.setRtcpFeedback((String[]) null).setStripExtensions(false);
+	}
+
+	/**
+	 * offer |codec| first, with |payloadType| if not -1; null keeps the order
+	 * libjingle creates
+	 */
+	public SdpPolicy setVideoCodec(String codec, int payloadType) {
+		mVideoCodec = codec;
+		mVideoPayloadType = payloadType;
+		return this;
+	}
+
+	/** offer only the given audio codecs, null for all */
+	public SdpPolicy setAudioCodecs(String... codecs) {
+		mAudioCodecs = codecs;
+		return this;
+	}
+
+	/** keep only rtcp-fb lines starting with the given values, null for all */
+	public SdpPolicy setRtcpFeedback(String... feedback) {
+		mRtcpFeedback = feedback;
+		return this;
+	}
+
+	/** remove the rtp header extension lines, licode does not use them */
+	public SdpPolicy setStripExtensions(boolean strip) {
+		mStripExtensions = strip;
+		return this;
+	}
+
+	/** also write b=TIAS lines when limiting the bandwidth */
+	public SdpPolicy setTias(boolean tias) {
+		mTias = tias;
+		return this;
+	}
+
+	/**
+	 * apply the policy and the bandwidth limits (kbps, 0 or less for none) to
+	 * a session description
+	 */
+	public String apply(String sdp, int audioKbps, int videoKbps) {
+		SdpRewriter rewriter = new SdpRewriter();
+		if (mAudioCodecs != null) {
+			rewriter.addRule(new SdpRewriter.CodecFilter("audio", true,
+					mAudioCodecs));
+		}
+		if (mVideoCodec != null) {
+			if (mVideoPayloadType >= 0) {
+				rewriter.addRule(new SdpRewriter.PayloadType("video",
+						mVideoCodec, mVideoPayloadType));
+			}
+			rewriter.addRule(new SdpRewriter.CodecPreference("video",
+					mVideoCodec));
+		}
+		if (mRtcpFeedback != null) {
+			rewriter.addRule(new SdpRewriter.AttributeFilter("a=rtcp-fb:",
+					mRtcpFeedback));
+		}
+		if (mStripExtensions) {
+			rewriter.addRule(new SdpRewriter.AttributeFilter("a=extmap:"));
+		}
+		rewriter.addRule(new SdpRewriter.Bandwidth("audio", audioKbps, mTias));
+		rewriter.addRule(new SdpRewriter.Bandwidth("video", videoKbps, mTias));
+		return rewriter.rewrite(sdp);
+	}
+}
@@ -0,0 +1,473 @@
+package com.example.licodeclient;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * SDP munging applied to local descriptions before they are set and sent. The
+ * description is read in a single pass without regular expressions:
+ * session level lines are copied straight through, the lines of each media
+ * section are collected and handed to the configured rules before they are
+ * written. Works on plain strings only and has no Android or libjingle
+ * dependencies, so it can be exercised and timed on a plain JVM.
+ */
+public final class SdpRewriter {
+	private static final String CRLF = "\r\n";
+
+	/** a rewriting step, applied to every media section in turn */
+	public interface Rule {
+		/** modify the lines of |section| in place */
+		void apply(MediaSection section);
+	}
+
+	/**
+	 * lines of one media section, starting with its m-line - reused for all
+	 * sections of a description
+	 */
+	public static final class MediaSection {
+		private final ArrayList<String> mLines = new ArrayList<String>();
+		private String mMedia = "";
+
+		/** media type of the section, e.g. audio or video */
+		public String getMedia() {
+			return mMedia;
+		}
+
+		/** the lines without line endings, index 0 is the m-line */
+		public List<String> getLines() {
+			return mLines;
+		}
+
+		/** index of the first line starting with |prefix|, -1 if none */
+		public int find(String prefix) {
+			for (int i = 0; i < mLines.size(); ++i) {
+				if (mLines.get(i).startsWith(prefix)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		/** remove all lines starting with |prefix| */
+		public void removeAll(String prefix) {
+			for (int i = mLines.size() - 1; i > 0; --i) {
+				if (mLines.get(i).startsWith(prefix)) {
+					mLines.remove(i);
+				}
+			}
+		}
+
+		/** payload types listed in the m-line, in order */
+		public List<String> getPayloadTypes() {
+			ArrayList<String> result = new ArrayList<String>();
+			String mLine = mLines.get(0);
+			// m=<media> <port> <proto> <fmt> ...
+			int start = nthSpace(mLine, 3);
+			while (start != -1) {
+				int end = mLine.indexOf(' ', start + 1);
+				String pt = mLine.substring(start + 1, end == -1 ? mLine
+						.length() : end);
+				if (pt.length() > 0) {
+					result.add(pt);
+				}
+				start = end;
+			}
+			return result;
+		}
+
+		/** replace the payload type list of the m-line */
+		public void setPayloadTypes(List<String> payloadTypes) {
+			String mLine = mLines.get(0);
+			int end = nthSpace(mLine, 3);
+			StringBuilder builder = new StringBuilder(end == -1 ? mLine
+					: mLine.substring(0, end));
+			for (String pt : payloadTypes) {
+				builder.append(' ').append(pt);
+			}
+			mLines.set(0, builder.toString());
+		}
+
+		/** payload types mapped to codec |name| by a=rtpmap, ignoring case */
+		public List<String> findPayloadTypes(String name) {
+			ArrayList<String> result = new ArrayList<String>();
+			for (String line : mLines) {
+				if (!line.startsWith("a=rtpmap:")) {
+					continue;
+				}
+				int space = line.indexOf(' ');
+				int slash = line.indexOf('/', space);
+				if (space == -1) {
+					continue;
+				}
+				String codec = line.substring(space + 1, slash == -1 ? line
+						.length() : slash);
+				if (codec.equalsIgnoreCase(name)) {
+					result.add(line.substring("a=rtpmap:".length(), space));
+				}
+			}
+			return result;
+		}
+
+		/**
+		 * drop payload types from the m-line along with their rtpmap, fmtp and
+		 * rtcp-fb lines
+		 */
+		public void removePayloadTypes(Set<String> payloadTypes) {
+			if (payloadTypes.isEmpty()) {
+				return;
+			}
+			List<String> kept = getPayloadTypes();
+			kept.removeAll(payloadTypes);
+			setPayloadTypes(kept);
+			for (int i = mLines.size() - 1; i > 0; --i) {
+				String pt = attributePayloadType(mLines.get(i));
+				if (pt != null && payloadTypes.contains(pt)) {
+					mLines.remove(i);
+				}
+			}
+		}
+
+		/**
+		 * exchange two payload types in the m-line, the rtpmap, fmtp and rtcp-fb
+		 * lines and apt= references
+		 */
+		public void swapPayloadTypes(String a, String b) {
+			List<String> payloadTypes = getPayloadTypes();
+			for (int i = 0; i < payloadTypes.size(); ++i) {
+				payloadTypes.set(i, swap(payloadTypes.get(i), a, b));
+			}
+			setPayloadTypes(payloadTypes);
+			for (int i = 1; i < mLines.size(); ++i) {
+				String line = mLines.get(i);
+				String pt = attributePayloadType(line);
+				if (pt == null) {
+					continue;
+				}
+				int colon = line.indexOf(':');
+				line = line.substring(0, colon + 1) + swap(pt, a, b)
+						+ line.substring(colon + 1 + pt.length());
+				int apt = line.indexOf("apt=");
+				if (apt != -1) {
+					int end = line.indexOf(';', apt);
+					if (end == -1) {
+						end = line.length();
+					}
+					line = line.substring(0, apt + 4)
+							+ swap(line.substring(apt + 4, end), a, b)
+							+ line.substring(end);
+				}
+				mLines.set(i, line);
+			}
+		}
+
+		private void reset(String mLine) {
+			mLines.clear();
+			mLines.add(mLine);
+			int end = mLine.indexOf(' ');
+			mMedia = mLine.substring(2, end == -1 ? mLine.length() : end);
+		}
+	}
+
+	/**
+	 * sets the bandwidth of one media type, replacing any b=AS and b=TIAS lines
+	 * already present
+	 */
+	public static final class Bandwidth implements Rule {
+		private final String mMedia;
+		private final int mKbps;
+		private final boolean mTias;
+
+		/**
+		 * @param media
+		 *            media type to limit, e.g. video
+		 * @param kbps
+		 *            limit in kbit/s, 0 or less leaves the section untouched
+		 * @param tias
+		 *            add a b=TIAS line (bits per second) next to b=AS
+		 */
+		public Bandwidth(String media, int kbps, boolean tias) {
+			mMedia = media;
+			mKbps = kbps;
+			mTias = tias;
+		}
+
+		@Override
+		public void apply(MediaSection section) {
+			if (mKbps <= 0 || !section.getMedia().equals(mMedia)) {
+				return;
+			}
+			section.removeAll("b=AS:");
+			section.removeAll("b=TIAS:");
+			// bandwidth lines follow the m-line and its i= and c= lines
+			List<String> lines = section.getLines();
+			int at = 1;
+			while (at < lines.size()
+					&& (lines.get(at).startsWith("i=") || lines.get(at)
+							.startsWith("c="))) {
+				++at;
+			}
+			lines.add(at, "b=AS:" + mKbps);
+			if (mTias) {
+				lines.add(at + 1, "b=TIAS:" + mKbps * 1000L);
+			}
+		}
+	}
+
+	/** moves the payload types of a codec to the front of the m-line */
+	public static final class CodecPreference implements Rule {
+		private final String mMedia;
+		private final String mCodec;
+
+		public CodecPreference(String media, String codec) {
+			mMedia = media;
+			mCodec = codec;
+		}
+
+		@Override
+		public void apply(MediaSection section) {
+			if (!section.getMedia().equals(mMedia)) {
+				return;
+			}
+			List<String> preferred = section.findPayloadTypes(mCodec);
+			if (preferred.isEmpty()) {
+				return;
+			}
+			List<String> payloadTypes = section.getPayloadTypes();
+			payloadTypes.removeAll(preferred);
+			payloadTypes.addAll(0, preferred);
+			section.setPayloadTypes(payloadTypes);
+		}
+	}
+
+	/**
+	 * removes codecs from a media section - either the listed ones, or all but
+	 * the listed ones. Retransmission payloads (apt=) of removed codecs are
+	 * removed with them.
+	 */
+	public static final class CodecFilter implements Rule {
+		private final String mMedia;
+		private final Set<String> mCodecs = new HashSet<String>();
+		private final boolean mKeep;
+
+		/**
+		 * @param media
+		 *            media type to filter, e.g. audio
+		 * @param keep
+		 *            true to keep only |codecs|, false to remove them
+		 * @param codecs
+		 *            codec names as in a=rtpmap, ignoring case
+		 */
+		public CodecFilter(String media, boolean keep, String... codecs) {
+			mMedia = media;
+			mKeep = keep;
+			for (String codec : codecs) {
+				mCodecs.add(codec.toLowerCase());
+			}
+		}
+
+		@Override
+		public void apply(MediaSection section) {
+			if (!section.getMedia().equals(mMedia)) {
+				return;
+			}
+			Set<String> removed = new HashSet<String>();
+			for (String line : section.getLines()) {
+				if (!line.startsWith("a=rtpmap:")) {
+					continue;
+				}
+				int space = line.indexOf(' ');
+				int slash = line.indexOf('/', space);
+				if (space == -1) {
+					continue;
+				}
+				String codec = line.substring(space + 1,
+						slash == -1 ? line.length() : slash).toLowerCase();
+				if (mCodecs.contains(codec) != mKeep
+						&& !codec.equals("rtx")) {
+					removed.add(line.substring("a=rtpmap:".length(), space));
+				}
+			}
+			// rtx payloads are kept or dropped with the codec they repair
+			for (String line : section.getLines()) {
+				if (!line.startsWith("a=fmtp:")) {
+					continue;
+				}
+				int apt = line.indexOf("apt=");
+				if (apt == -1) {
+					continue;
+				}
+				int end = line.indexOf(';', apt);
+				String repaired = line.substring(apt + 4,
+						end == -1 ? line.length() : end);
+				if (removed.contains(repaired)) {
+					removed.add(attributePayloadType(line));
+				}
+			}
+			section.removePayloadTypes(removed);
+		}
+	}
+
+	/**
+	 * gives the first payload type of a codec a fixed number, swapping it with
+	 * the codec that had the number before
+	 */
+	public static final class PayloadType implements Rule {
+		private final String mMedia;
+		private final String mCodec;
+		private final String mPayloadType;
+
+		public PayloadType(String media, String codec, int payloadType) {
+			mMedia = media;
+			mCodec = codec;
+			mPayloadType = Integer.toString(payloadType);
+		}
+
+		@Override
+		public void apply(MediaSection section) {
+			if (!section.getMedia().equals(mMedia)) {
+				return;
+			}
+			List<String> current = section.findPayloadTypes(mCodec);
+			if (current.isEmpty() || current.get(0).equals(mPayloadType)) {
+				return;
+			}
+			section.swapPayloadTypes(current.get(0), mPayloadType);
+		}
+	}
+
+	/**
+	 * removes attribute lines - all lines starting with |prefix|, except those
+	 * whose value after the payload type starts with one of the kept values,
+	 * e.g. prefix a=rtcp-fb: keeping nack
+	 */
+	public static final class AttributeFilter implements Rule {
+		private final String mPrefix;
+		private final String[] mKeep;
+
+		public AttributeFilter(String prefix, String... keep) {
+			mPrefix = prefix;
+			mKeep = keep;
+		}
+
+		@Override
+		public void apply(MediaSection section) {
+			List<String> lines = section.getLines();
+			for (int i = lines.size() - 1; i > 0; --i) {
+				String line = lines.get(i);
+				if (line.startsWith(mPrefix) && !kept(line)) {
+					lines.remove(i);
+				}
+			}
+		}
+
+		private boolean kept(String line) {
+			int space = line.indexOf(' ', mPrefix.length());
+			if (space == -1) {
+				return false;
+			}
+			for (String keep : mKeep) {
+				if (line.startsWith(keep, space + 1)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	private final ArrayList<Rule> mRules = new ArrayList<Rule>();
+
+	/** add a rule, applied after the ones added before */
+	public SdpRewriter addRule(Rule rule) {
+		mRules.add(rule);
+		return this;
+	}
+
+	/** apply all rules to |sdp| and return the result, lines end with CRLF */
+	public String rewrite(CharSequence sdp) {
+		StringBuilder out = new StringBuilder(sdp.length() + 64);
+		MediaSection section = null;
+		int length = sdp.length();
+		int start = 0;
+		while (start < length) {
+			int end = start;
+			while (end < length && sdp.charAt(end) != '\n') {
+				++end;
+			}
+			int next = end + 1;
+			if (end > start && sdp.charAt(end - 1) == '\r') {
+				--end;
+			}
+			if (end > start + 1 && sdp.charAt(start) == 'm'
+					&& sdp.charAt(start + 1) == '=') {
+				if (section != null) {
+					flush(section, out);
+				} else {
+					section = new MediaSection();
+				}
+				section.reset(sdp.subSequence(start, end).toString());
+			} else if (section != null) {
+				section.mLines.add(sdp.subSequence(start, end).toString());
+			} else if (end > start) {
+				// session level lines pass through untouched
+				out.append(sdp, start, end).append(CRLF);
+			}
+			start = next;
+		}
+		if (section != null) {
+			flush(section, out);
+		}
+		return out.toString();
+	}
+
+	/** apply the rules to a completed media section and write it out */
+	private void flush(MediaSection section, StringBuilder out) {
+		for (Rule rule : mRules) {
+			rule.apply(section);
+		}
+		for (String line : section.mLines) {
+			if (line.length() > 0) {
+				out.append(line).append(CRLF);
+			}
+		}
+	}
+
+	/**
+	 * set b=AS bandwidth lines for the audio and video sections, replacing
+	 * existing ones; a limit of 0 or less leaves that media unlimited
+	 */
+	public static String limitBandwidth(String sdp, int audioKbps, int videoKbps) {
+		return new SdpRewriter()
+				.addRule(new Bandwidth("audio", audioKbps, false))
+				.addRule(new Bandwidth("video", videoKbps, false)).rewrite(sdp);
+	}
+
+	/** payload type an a=rtpmap/fmtp/rtcp-fb line refers to, or null */
+	private static String attributePayloadType(String line) {
+		int colon = line.indexOf(':');
+		if (colon == -1
+				|| !(line.startsWith("a=rtpmap:") || line.startsWith("a=fmtp:") || line
+						.startsWith("a=rtcp-fb:"))) {
+			return null;
+		}
+		int space = line.indexOf(' ', colon);
+		return line.substring(colon + 1, space == -1 ? line.length() : space);
+	}
+
+	private static String swap(String pt, String a, String b) {
+		return pt.equals(a) ? b : pt.equals(b) ? a : pt;
+	}
+
+	/** index of the |n|th space in |line|, -1 if there are fewer */
+	private static int nthSpace(String line, int n) {
+		int index = -1;
+		for (int i = 0; i < n; ++i) {
+			index = line.indexOf(' ', index + 1);
+			if (index == -1) {
+				return -1;
+			}
+		}
+		return index;
+	}
+}
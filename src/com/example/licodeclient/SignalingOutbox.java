@@ -0,0 +1,325 @@
+package com.example.licodeclient;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+
+import org.json.JSONArray;
+
+import android.os.Handler;
+
+import com.example.licodeclient.VideoConnectorInterface.SignalingListener;
+import com.koushikdutta.async.http.socketio.Acknowledge;
+import com.koushikdutta.async.http.socketio.SocketIOClient;
+
+/**
+ * Ordered queue of the messages sent to the licode server. Messages are held
+ * while there is no socket.io connection and sent in order once there is one
+ * again. A message with the key of an unsent one replaces it, or cancels it
+ * out; a message whose acknowledgement does not arrive in time is sent again
+ * if it may be repeated. The listener is called without the outbox locked.
+ */
+class SignalingOutbox {
+	/** how a message relates to an unsent one with the same key */
+	enum Coalesce {
+		/** no relation */
+		kNone,
+		/** the older message is superseded and dropped */
+		kReplace,
+		/** both messages undo each other and are dropped */
+		kCancel
+	}
+
+	/** messages held at most, the oldest are dropped beyond */
+	static final int MAX_QUEUED = 256;
+	/** time an acknowledgement may take before the message is repeated */
+	private static final long ACK_TIMEOUT_MS = 10000;
+
+	/** a message on its way */
+	private class Entry implements Runnable, Acknowledge {
+		final String channel;
+		final JSONArray args;
+		final Acknowledge ack;
+		final String key;
+		/** times the message may be sent again */
+		int retries;
+		int attempts = 0;
+		/** when the message was sent first, in ms */
+		long sentAt = 0;
+		boolean acknowledged = false;
+
+		Entry(String channel, JSONArray args, Acknowledge ack, String key,
+				int retries) {
+			this.channel = channel;
+			this.args = args;
+			this.ack = ack;
+			this.key = key;
+			this.retries = retries;
+		}
+
+		/** the acknowledgement timed out */
+		@Override
+		public void run() {
+			onAckTimeout(this);
+		}
+
+		@Override
+		public void acknowledge(JSONArray arguments) {
+			onAcknowledged(this, arguments);
+		}
+	}
+
+	private final Handler mTimer;
+	/** messages not sent yet, in order */
+	private final LinkedList<Entry> mPending = new LinkedList<Entry>();
+	/** messages sent and waiting for their acknowledgement */
+	private final ArrayList<Entry> mInFlight = new ArrayList<Entry>();
+	/** pending messages per channel */
+	private final HashMap<String, Integer> mDepth = new HashMap<String, Integer>();
+	private SocketIOClient mClient = null;
+	private volatile SignalingListener mListener = null;
+	/** orders the depth reports, taken before the outbox lock */
+	private final Object mReportLock = new Object();
+	private int mDropped = 0;
+
+	SignalingOutbox(Handler timer) {
+		mTimer = timer;
+	}
+
+	void setListener(SignalingListener listener) {
+		mListener = listener;
+	}
+
+	/**
+	 * the connection to send with, null while there is none; held messages
+	 * are sent once there is one
+	 */
+	void setClient(SocketIOClient client) {
+		synchronized (this) {
+			mClient = client;
+			if (client == null) {
+				// acknowledgements of the lost connection will not arrive -
+				// repeatable messages go out again with the next one
+				int lost = 0;
+				for (int i = mInFlight.size() - 1; i >= 0; --i) {
+					Entry entry = mInFlight.get(i);
+					mTimer.removeCallbacks(entry);
+					if (entry.retries > 0) {
+						--entry.retries;
+						addPending(0, entry);
+					} else {
+						++lost;
+					}
+				}
+				mInFlight.clear();
+				if (lost > 0) {
+					mDropped += lost;
+					LicodeConnector.log("SignalingOutbox: connection lost, dropped "
+							+ lost + " unacknowledged");
+				}
+			}
+		}
+		if (client == null) {
+			reportDepth();
+		} else {
+			flush();
+		}
+	}
+
+	/**
+	 * queue a message; |key| relates it to unsent messages as told by
+	 * |coalesce|, |retries| is how often it may be repeated without an
+	 * acknowledgement - only with |ack| given
+	 */
+	void send(String channel, JSONArray args, Acknowledge ack, String key,
+			Coalesce coalesce, int retries) {
+		boolean cancelled = false;
+		synchronized (this) {
+			if (key != null && coalesce != Coalesce.kNone) {
+				for (Iterator<Entry> it = mPending.iterator(); it.hasNext();) {
+					Entry older = it.next();
+					if (key.equals(older.key)) {
+						it.remove();
+						countPending(older.channel, -1);
+						cancelled = coalesce == Coalesce.kCancel;
+						break;
+					}
+				}
+			}
+			if (!cancelled) {
+				if (mPending.size() >= MAX_QUEUED) {
+					Entry dropped = mPending.removeFirst();
+					countPending(dropped.channel, -1);
+					++mDropped;
+					LicodeConnector.log("SignalingOutbox: full, dropped "
+							+ dropped.channel);
+				}
+				addPending(mPending.size(), new Entry(channel, args, ack, key,
+						ack != null ? retries : 0));
+			}
+		}
+		if (cancelled) {
+			reportDepth();
+		} else {
+			flush();
+		}
+	}
+
+	/**
+	 * drop the unsent messages of a lost session, keeping those on the
+	 * |kept| channels
+	 */
+	void dropPending(Set<String> kept) {
+		int dropped = 0;
+		synchronized (this) {
+			for (Iterator<Entry> it = mPending.iterator(); it.hasNext();) {
+				Entry entry = it.next();
+				if (!kept.contains(entry.channel)) {
+					it.remove();
+					countPending(entry.channel, -1);
+					++dropped;
+				}
+			}
+			mDropped += dropped;
+		}
+		if (dropped > 0) {
+			LicodeConnector.log("SignalingOutbox: session lost, dropped "
+					+ dropped);
+			reportDepth();
+		}
+	}
+
+	/** forget all messages */
+	void clear() {
+		synchronized (this) {
+			for (Entry entry : mInFlight) {
+				mTimer.removeCallbacks(entry);
+			}
+			mInFlight.clear();
+			mPending.clear();
+			mDepth.clear();
+		}
+		reportDepth();
+	}
+	/** messages not sent yet */
+	synchronized int getDepth() {
+		return mPending.size();
+	}
+
+	/** messages not sent yet on |channel| */
+	synchronized int getDepth(String channel) {
+		Integer depth = mDepth.get(channel);
+		return depth == null ? 0 : depth;
+	}
+
+	/**
+	 * messages dropped because the queue was full, lost unacknowledged with
+	 * their connection, or held for a session that is gone
+	 */
+	synchronized int getDropped() {
+		return mDropped;
+	}
+
+	/** send the held messages while there is a connection */
+	private void flush() {
+		synchronized (this) {
+			while (mClient != null && !mPending.isEmpty()) {
+				Entry entry = mPending.removeFirst();
+				countPending(entry.channel, -1);
+				emit(entry);
+			}
+		}
+		reportDepth();
+	}
+
+	/** call with the lock held */
+	private void emit(Entry entry) {
+		if (entry.sentAt == 0) {
+			entry.sentAt = System.nanoTime() / 1000000;
+		}
+		++entry.attempts;
+		if (entry.ack != null) {
+			mInFlight.add(entry);
+			mTimer.postDelayed(entry, ACK_TIMEOUT_MS);
+		}
+		mClient.emit(entry.channel, entry.args, entry.ack != null ? entry
+				: null);
+	}
+
+	private void onAcknowledged(Entry entry, JSONArray arguments) {
+		synchronized (this) {
+			if (entry.acknowledged) {
+				// a repeated message got acknowledged twice
+				return;
+			}
+			entry.acknowledged = true;
+			mInFlight.remove(entry);
+			mTimer.removeCallbacks(entry);
+		}
+		SignalingListener listener = mListener;
+		if (listener != null) {
+			listener.onAckLatency(entry.channel, System.nanoTime() / 1000000
+					- entry.sentAt, entry.attempts);
+		}
+		entry.ack.acknowledge(arguments);
+	}
+
+	private void onAckTimeout(Entry entry) {
+		synchronized (this) {
+			if (entry.acknowledged || !mInFlight.remove(entry)) {
+				return;
+			}
+			if (entry.retries <= 0) {
+				LicodeConnector.log("SignalingOutbox: no acknowledgement for "
+						+ entry.channel);
+				return;
+			}
+			--entry.retries;
+			if (mClient != null) {
+				emit(entry);
+				return;
+			}
+			addPending(0, entry);
+		}
+		reportDepth();
+	}
+
+	/** call with the lock held */
+	private void addPending(int index, Entry entry) {
+		mPending.add(index, entry);
+		countPending(entry.channel, 1);
+	}
+
+	/** call with the lock held */
+	private void countPending(String channel, int delta) {
+		Integer depth = mDepth.get(channel);
+		int value = (depth == null ? 0 : depth) + delta;
+		if (value > 0) {
+			mDepth.put(channel, value);
+		} else {
+			mDepth.remove(channel);
+		}
+	}
+
+	/** call without the lock held - reports stay in order */
+	private void reportDepth() {
+		SignalingListener listener = mListener;
+		if (listener == null) {
+			return;
+		}
+		synchronized (mReportLock) {
+			Map<String, Integer> channels;
+			int depth;
+			synchronized (this) {
+				channels = Collections
+						.unmodifiableMap(new HashMap<String, Integer>(mDepth));
+				depth = mPending.size();
+			}
+			listener.onOutboxDepth(channels, depth);
+		}
+	}
+}
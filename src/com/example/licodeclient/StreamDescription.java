@@ -5,7 +5,6 @@ import org.json.JSONObject;
 import org.webrtc.MediaConstraints;
 import org.webrtc.MediaStream;
 import org.webrtc.PeerConnection;
-import org.webrtc.SdpObserver;
 import org.webrtc.VideoRenderer;
 
 public class StreamDescription implements StreamDescriptionInterface {
@@ -82,6 +81,30 @@ public class StreamDescription implements StreamDescriptionInterface {
 		return new StreamDescription(id, data, video, audio, screen, attr, nick);
 	}
 
+	/**
+	 * take over the media flags and attributes of |other|, a newer
+	 * description of the same stream; @return true if anything changed
+	 */
+	public boolean updateFrom(StreamDescription other) {
+		String attributes = other.mAttributes == null ? null
+				: other.mAttributes.toString();
+		boolean changed = mData != other.mData || mVideo != other.mVideo
+				|| mAudio != other.mAudio || mScreen != other.mScreen
+				|| (mNick == null ? other.mNick != null : !mNick
+						.equals(other.mNick))
+				|| (mAttributes == null ? attributes != null : !mAttributes
+						.toString().equals(attributes));
+		if (changed) {
+			mData = other.mData;
+			mVideo = other.mVideo;
+			mAudio = other.mAudio;
+			mScreen = other.mScreen;
+			mNick = other.mNick;
+			mAttributes = other.mAttributes;
+		}
+		return changed;
+	}
+
 	public StreamDescription(String id, boolean data, boolean video,
 			boolean audio, boolean screen, JSONObject attr, String nick) {
 		mId = id;
@@ -197,13 +220,15 @@ public class StreamDescription implements StreamDescriptionInterface {
 	private volatile MediaStream mMediaStream;
 	/** currently set video renderer */
 	private VideoRenderer mRenderer;
+	/** data channel received on the subscriber connection */
+	private DataStreamChannel mDataChannel;
 
 	/** access the sdp's constraints */
 	public MediaConstraints sdpConstraints() {
 		return mSdpConstraints;
 	}
 
-	public void initLocal(PeerConnection pc, SdpObserver sdpObserver) {
+	public void initLocal(PeerConnection pc) {
 		mLocal = true;
 		mState = StreamState.LOCAL;
 		this.pc = pc;
@@ -212,10 +237,9 @@ public class StreamDescription implements StreamDescriptionInterface {
 				"OfferToReceiveAudio", "true"));
 		mSdpConstraints.mandatory.add(new MediaConstraints.KeyValuePair(
 				"OfferToReceiveVideo", "true"));
-		pc.createOffer(sdpObserver, mSdpConstraints);
 	}
 
-	public void initRemote(PeerConnection pc, SdpObserver sdpObserver) {
+	public void initRemote(PeerConnection pc) {
 		mLocal = false;
 		mState = StreamState.OPENING;
 		this.pc = pc;
@@ -224,7 +248,6 @@ public class StreamDescription implements StreamDescriptionInterface {
 				"OfferToReceiveAudio", "true"));
 		mSdpConstraints.mandatory.add(new MediaConstraints.KeyValuePair(
 				"OfferToReceiveVideo", "true"));
-		pc.createOffer(sdpObserver, mSdpConstraints);
 	}
 
 	/** sets the associated media stream - if prepared */
@@ -232,6 +255,27 @@ public class StreamDescription implements StreamDescriptionInterface {
 		mMediaStream = media;
 	}
 
+	/** keep the data channel received on the subscriber connection */
+	synchronized void setDataChannel(DataStreamChannel channel) {
+		DataStreamChannel previous = mDataChannel;
+		mDataChannel = channel;
+		if (previous != null) {
+			previous.close();
+		}
+	}
+
+	/** close the received data channel - before its connection is disposed */
+	void closeDataChannel() {
+		DataStreamChannel channel;
+		synchronized (this) {
+			channel = mDataChannel;
+			mDataChannel = null;
+		}
+		if (channel != null) {
+			channel.close();
+		}
+	}
+
 	/** access the media stream - may be null */
 	public MediaStream getMedia() {
 		return mMediaStream;
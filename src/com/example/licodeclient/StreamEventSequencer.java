@@ -0,0 +1,59 @@
+package com.example.licodeclient;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+
+/**
+ * Keeps the streams added and removed by the server in order with the stream
+ * list a join returns. Both run on one serial executor - the connector thread;
+ * events signaled while a join waits for its acknowledgement are held back and
+ * run right after its list is applied, in the order they arrived, so the list
+ * can neither remove a stream announced after it nor bring back one removed
+ * after it.
+ */
+final class StreamEventSequencer {
+	private final Executor mExecutor;
+	/** events signaled while a join is pending */
+	private final ArrayDeque<Runnable> mHeld = new ArrayDeque<Runnable>();
+	/** set from sending a join until its stream list is applied */
+	private boolean mHolding = false;
+
+	StreamEventSequencer(Executor executor) {
+		mExecutor = executor;
+	}
+
+	/** a join was sent - hold back stream events until its list is applied */
+	synchronized void hold() {
+		mHolding = true;
+		mHeld.clear();
+	}
+
+	/** run a stream added or removed by the server, in order */
+	synchronized void post(Runnable event) {
+		if (mHolding) {
+			mHeld.add(event);
+		} else {
+			mExecutor.execute(event);
+		}
+	}
+
+	/** apply the stream list of the join, then the events held back meanwhile */
+	synchronized void postList(Runnable list) {
+		mExecutor.execute(list);
+		mHolding = false;
+		while (!mHeld.isEmpty()) {
+			mExecutor.execute(mHeld.poll());
+		}
+	}
+
+	/** the join failed or the session is gone, drop what was held back */
+	synchronized void clear() {
+		mHolding = false;
+		mHeld.clear();
+	}
+
+	/** number of events held back */
+	synchronized int getHeld() {
+		return mHeld.size();
+	}
+}
@@ -0,0 +1,212 @@
+package com.example.licodeclient;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+
+import android.os.Handler;
+
+import com.example.licodeclient.VideoConnectorInterface.SubscriptionListener;
+
+/**
+ * Orders the subscriptions of a room, so only a bounded number of peer
+ * connections gather candidates and negotiate with the server at a time, and
+ * visible streams get their turn before the rest. Must only be used on the
+ * connector thread.
+ */
+class SubscriptionScheduler {
+	/** starts the negotiation of a stream whose turn has come */
+	interface Starter {
+		/** @return false if the stream cannot be subscribed any more */
+		boolean startSubscription(StreamDescription stream);
+	}
+
+	/** default number of negotiations running at a time */
+	static final int DEFAULT_MAX_IN_FLIGHT = 3;
+	/** a negotiation without media after this long gives up its slot */
+	private static final long NEGOTIATION_TIMEOUT_MS = 15000;
+
+	/** a subscription waiting or negotiating */
+	private class Entry implements Runnable {
+		final StreamDescription stream;
+		int priority;
+		/** order of submission, breaks ties between equal priorities */
+		final long seq;
+		/** when subscribe was requested, in ms */
+		final long queuedAt;
+
+		Entry(StreamDescription stream, int priority, long seq, long queuedAt) {
+			this.stream = stream;
+			this.priority = priority;
+			this.seq = seq;
+			this.queuedAt = queuedAt;
+		}
+
+		/** the negotiation timed out */
+		@Override
+		public void run() {
+			if (mInFlight.get(stream.getId()) == this) {
+				finish(stream.getId(), false);
+			}
+		}
+	}
+
+	private final Handler mHandler;
+	private final Starter mStarter;
+	private final PriorityQueue<Entry> mQueue = new PriorityQueue<Entry>(11,
+			new Comparator<Entry>() {
+				@Override
+				public int compare(Entry a, Entry b) {
+					if (a.priority != b.priority) {
+						return a.priority > b.priority ? -1 : 1;
+					}
+					return a.seq < b.seq ? -1 : a.seq == b.seq ? 0 : 1;
+				}
+			});
+	/** queued entries by stream id */
+	private final HashMap<String, Entry> mQueued = new HashMap<String, Entry>();
+	/** negotiating entries by stream id */
+	private final HashMap<String, Entry> mInFlight = new HashMap<String, Entry>();
+	private int mMaxInFlight = DEFAULT_MAX_IN_FLIGHT;
+	private long mSeq = 0;
+	private SubscriptionListener mListener = null;
+
+	SubscriptionScheduler(Handler handler, Starter starter) {
+		mHandler = handler;
+		mStarter = starter;
+	}
+
+	void setListener(SubscriptionListener listener) {
+		mListener = listener;
+	}
+
+	/** set the number of negotiations running at a time, at least 1 */
+	void setMaxInFlight(int maxInFlight) {
+		mMaxInFlight = Math.max(1, maxInFlight);
+		pump();
+	}
+
+	/**
+	 * queue a subscription; a stream queued already only gets the higher of
+	 * both priorities
+	 */
+	void submit(StreamDescription stream, int priority) {
+		String id = stream.getId();
+		if (mInFlight.containsKey(id)) {
+			return;
+		}
+		Entry entry = mQueued.get(id);
+		if (entry != null) {
+			if (priority > entry.priority) {
+				reprioritize(entry, priority);
+			}
+			return;
+		}
+		entry = new Entry(stream, priority, mSeq++, now());
+		mQueued.put(id, entry);
+		mQueue.add(entry);
+		pump();
+	}
+
+	/** change the priority of a queued subscription */
+	void setPriority(String streamId, int priority) {
+		Entry entry = mQueued.get(streamId);
+		if (entry != null && entry.priority != priority) {
+			reprioritize(entry, priority);
+		}
+	}
+
+	/** media of a stream arrived - its negotiation is done */
+	void onMediaAvailable(String streamId) {
+		finish(streamId, true);
+	}
+
+	/** the negotiation of a stream failed */
+	void onFailed(String streamId) {
+		finish(streamId, false);
+	}
+
+	/**
+	 * forget a stream, queued or negotiating; @return true if it was
+	 * negotiating
+	 */
+	boolean cancel(String streamId) {
+		Entry entry = mQueued.remove(streamId);
+		if (entry != null) {
+			mQueue.remove(entry);
+			report();
+			return false;
+		}
+		entry = mInFlight.remove(streamId);
+		if (entry == null) {
+			return false;
+		}
+		mHandler.removeCallbacks(entry);
+		pump();
+		return true;
+	}
+
+	/** forget all subscriptions */
+	void clear() {
+		for (Entry entry : mInFlight.values()) {
+			mHandler.removeCallbacks(entry);
+		}
+		mQueue.clear();
+		mQueued.clear();
+		mInFlight.clear();
+		report();
+	}
+
+	/** number of subscriptions waiting for a slot */
+	int getQueueDepth() {
+		return mQueued.size();
+	}
+
+	/** number of subscriptions negotiating */
+	int getInFlight() {
+		return mInFlight.size();
+	}
+
+	private void reprioritize(Entry entry, int priority) {
+		mQueue.remove(entry);
+		entry.priority = priority;
+		mQueue.add(entry);
+	}
+
+	private void finish(String streamId, boolean media) {
+		Entry entry = mInFlight.remove(streamId);
+		if (entry == null) {
+			return;
+		}
+		mHandler.removeCallbacks(entry);
+		if (media && mListener != null) {
+			mListener.onTimeToMedia(entry.stream, now() - entry.queuedAt);
+		}
+		pump();
+	}
+
+	/** start queued subscriptions while there are free slots */
+	private void pump() {
+		while (mInFlight.size() < mMaxInFlight && !mQueue.isEmpty()) {
+			Entry entry = mQueue.poll();
+			String id = entry.stream.getId();
+			mQueued.remove(id);
+			if (!mStarter.startSubscription(entry.stream)) {
+				continue;
+			}
+			mInFlight.put(id, entry);
+			mHandler.postDelayed(entry, NEGOTIATION_TIMEOUT_MS);
+		}
+		report();
+	}
+
+	private void report() {
+		if (mListener != null) {
+			mListener.onSubscriptionQueue(mQueued.size(), mInFlight.size());
+		}
+	}
+
+	private static long now() {
+		return System.nanoTime() / 1000000;
+	}
+}
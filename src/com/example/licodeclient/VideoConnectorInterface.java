@@ -1,10 +1,14 @@
 package com.example.licodeclient;
 
+import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 import android.app.Activity;
 
 import com.example.licodeclient.apprtc.VideoStreamsView;
+import com.example.licodeclient.apprtc.VpxRateController;
 
 public interface VideoConnectorInterface {
 
@@ -25,6 +29,12 @@ public interface VideoConnectorInterface {
 		/** signals that the given stream was added to the room */
 		void onStreamAdded(StreamDescriptionInterface stream);
 
+		/**
+		 * signals that the flags or attributes of the given stream changed,
+		 * its subscription stays as it is
+		 */
+		void onStreamChanged(StreamDescriptionInterface stream);
+
 		/**
 		 * signals that the given stream now has media available to display -
 		 * after subscribe request!
@@ -47,6 +57,90 @@ public interface VideoConnectorInterface {
 		void onRequestRefreshToken();
 	}
 
+	/** steps of setting up the peer connection of a stream */
+	public enum NegotiationPhase {
+		kCreateOffer, kSetLocal, kGather, kServerAnswer, kSetRemote
+	}
+
+	/**
+	 * reports the duration of each negotiation step, to measure join latency;
+	 * called on libjingle and socket.io threads
+	 */
+	public interface NegotiationListener {
+		/** |phase| of the negotiation of |stream| took |millis| ms */
+		void onNegotiationPhase(StreamDescriptionInterface stream,
+				NegotiationPhase phase, long millis);
+
+		/** the negotiation of |stream| failed in |phase| */
+		void onNegotiationFailed(StreamDescriptionInterface stream,
+				NegotiationPhase phase, String error);
+	}
+
+	/** subscribe priority of streams not on screen */
+	public static final int SUBSCRIBE_PRIORITY_NORMAL = 0;
+	/** subscribe priority of streams on screen */
+	public static final int SUBSCRIBE_PRIORITY_VISIBLE = 1;
+	/** subscribe priority of the focused stream */
+	public static final int SUBSCRIBE_PRIORITY_FOCUSED = 2;
+
+	/** reports how subscriptions are scheduled, called on the connector thread */
+	public interface SubscriptionListener {
+		/** number of subscriptions waiting and negotiating changed */
+		void onSubscriptionQueue(int queued, int inFlight);
+
+		/** media of |stream| became available |millis| ms after subscribe() */
+		void onTimeToMedia(StreamDescriptionInterface stream, long millis);
+	}
+
+	/** reports how the signaling connection is resumed after a loss */
+	public interface ReconnectListener {
+		/** attempt |attempt| starts in |delayMillis| ms */
+		void onReconnecting(int attempt, long delayMillis);
+
+		/**
+		 * the session was resumed after |millis| ms, |keptStreams| streams kept
+		 * their peer connections
+		 */
+		void onReconnected(int attempts, long millis, int keptStreams);
+
+		/** reconnecting was given up, the room is disconnected */
+		void onReconnectFailed(int attempts);
+	}
+
+	/**
+	 * an observer taking all events collected within a frame interval at once,
+	 * instead of one callback each
+	 */
+	public interface RoomBatchObserver extends RoomObserver {
+		/** the events in the order they happened */
+		void onRoomEvents(List<RoomEvent> events);
+	}
+
+	/** receives binary data and the flow control of sendData() */
+	public interface DataStreamListener {
+		/** binary data arrived on |stream| */
+		void onStreamBinaryData(ByteBuffer data,
+				StreamDescriptionInterface stream);
+
+		/** a sendData() refused for a full queue may be retried now */
+		void onDataWritable();
+	}
+
+	/** reports the outbox of messages to the server, called on any thread */
+	public interface SignalingListener {
+		/**
+		 * number of messages waiting to be sent changed - |channels| holds the
+		 * count of every channel with messages waiting, |depth| their sum
+		 */
+		void onOutboxDepth(Map<String, Integer> channels, int depth);
+
+		/**
+		 * a message on |channel| was acknowledged |millis| ms after it was sent
+		 * first, having been sent |attempts| times
+		 */
+		void onAckLatency(String channel, long millis, int attempts);
+	}
+
 	/** various states of the connection to the server */
 	public enum State {
 		kUninitialized, kDisconnected, kConnecting, kConnectingWaitingForToken, kConnected, kDisconnecting
@@ -68,6 +162,79 @@ public interface VideoConnectorInterface {
 	/** sets the bandwidth limits for video and audio transport */
 	public abstract void setBandwidthLimits(int video, int audio);
 
+	/**
+	 * keep the bitrate of an encoder of local video within the video limit
+	 * written into the sdp, following changes by setBandwidthLimits() or the
+	 * server
+	 */
+	public abstract void addRateController(VpxRateController controller);
+
+	/** stop updating the limit of a rate controller */
+	public abstract void removeRateController(VpxRateController controller);
+
+	/**
+	 * sets how local session descriptions are trimmed; null trims nothing but
+	 * still writes the bandwidth limits, see SdpPolicy.none()
+	 */
+	public abstract void setSdpPolicy(SdpPolicy policy);
+
+	/**
+	 * send offers before ice gathering is complete and trickle the candidates
+	 * after them; off by default for servers without trickle support
+	 */
+	public abstract void setTrickleIce(boolean enabled);
+
+	/** get the phase timings of all stream negotiations, null for none */
+	public abstract void setNegotiationListener(NegotiationListener listener);
+
+	/**
+	 * resume a lost signaling connection with the same token, keeping media
+	 * that still flows; on by default
+	 */
+	public abstract void setAutoReconnect(boolean enabled);
+
+	/** get informed about reconnects, null for none */
+	public abstract void setReconnectListener(ReconnectListener listener);
+
+	/** number of times the signaling connection was resumed */
+	public abstract int getReconnectCount();
+
+	/**
+	 * deliver the room events in batches with |executor|; the ui thread by
+	 * default
+	 */
+	public abstract void setEventExecutor(Executor executor);
+
+	/**
+	 * carry the data of streams published from now on over a data channel
+	 * instead of socket.io; off by default
+	 */
+	public abstract void setDataChannelEnabled(boolean enabled);
+
+	/** get binary data and flow control of data streams, null for none */
+	public abstract void setDataStreamListener(DataStreamListener listener);
+
+	/** get the outbox depth and acknowledgement times, null for none */
+	public abstract void setSignalingListener(SignalingListener listener);
+
+	/**
+	 * number of messages waiting to be sent, e.g. while the signaling
+	 * connection is resumed
+	 */
+	public abstract int getSignalingQueueDepth();
+
+	/**
+	 * send a message on the published stream; returns false if there is none,
+	 * or too much data is waiting - then wait for onDataWritable()
+	 */
+	public abstract boolean sendData(String message);
+
+	/** send binary data on the published stream, see sendData(String) */
+	public abstract boolean sendData(ByteBuffer data);
+
+	/** bytes sent with sendData() and not yet on the wire */
+	public abstract long getDataBufferedAmount();
+
 	/** connect with the given token */
 	public abstract void connect(String token);
 
@@ -101,6 +268,29 @@ public interface VideoConnectorInterface {
 	/** requests to receive the given stream */
 	public abstract void subscribe(StreamDescriptionInterface stream);
 
+	/**
+	 * requests to receive the given stream, negotiated before streams of lower
+	 * priority - see SUBSCRIBE_PRIORITY_*
+	 */
+	public abstract void subscribe(StreamDescriptionInterface stream,
+			int priority);
+
+	/** change the priority of a subscription still waiting for its turn */
+	public abstract void setSubscribePriority(String streamId, int priority);
+
+	/**
+	 * whether the server of the room offers one peer connection shared by all
+	 * subscriptions; they use one connection per stream either way, as the
+	 * offer/answer exchange of this client negotiates each stream on its own
+	 */
+	public abstract boolean isSinglePeerConnectionSupported();
+
+	/** number of subscriptions negotiating at the same time */
+	public abstract void setMaxConcurrentSubscriptions(int count);
+
+	/** get scheduling metrics of the subscriptions, null for none */
+	public abstract void setSubscriptionListener(SubscriptionListener listener);
+
 	/** remove the last bits and pieces of a stream */
 	public abstract void destroy(StreamDescriptionInterface stream);
 
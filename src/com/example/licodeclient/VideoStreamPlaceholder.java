@@ -32,6 +32,15 @@ public class VideoStreamPlaceholder extends View {
 		}
 	}
 
+	@Override
+	protected void onVisibilityChanged(View changedView, int visibility) {
+		super.onVisibilityChanged(changedView, visibility);
+
+		if (mVsv != null) {
+			mVsv.setStreamVisible(mStreamId, isShown());
+		}
+	}
+
 	/** sets the zoomed state of this placeholder view */
 	public void setZoomed(boolean zoomed) {
 		mZoomed = zoomed;
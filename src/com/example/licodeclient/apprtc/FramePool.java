@@ -30,58 +30,151 @@ package com.example.licodeclient.apprtc;
 
 import org.webrtc.VideoRenderer.I420Frame;
 
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * This class acts as an allocation pool meant to minimize GC churn caused by
  * frame allocation & disposal.  The public API comprises of just two methods:
- * copyFrame(), which allocates as necessary and copies, and
+ * takeFrame(), which allocates as necessary, and
  * returnFrame(), which returns frame ownership to the pool for use by a later
- * call to copyFrame().
+ * call to takeFrame().
  *
- * This class is thread-safe; calls to copyFrame() and returnFrame() are allowed
+ * Frames are kept in one bounded, lock-free free list per size class (see
+ * summarizeFrameDimensions()).  Frames returned to a full size class are
+ * dropped, and size classes that have not been used for a while are evicted
+ * so that a resolution change does not pin dead buffers forever.
+ *
+ * This class is thread-safe; calls to takeFrame() and returnFrame() are allowed
  * to happen on any thread.
  */
 class FramePool {
-  // Maps each summary code (see summarizeFrameDimensions()) to a list of frames
-  // of that description.
-  private final HashMap<Long, LinkedList<I420Frame>> availableFrames =
-      new HashMap<Long, LinkedList<I420Frame>>();
+  // Default number of frames retained per size class.
+  static final int DEFAULT_MAX_FRAMES_PER_SIZE = 4;
+  // Default time after which an unused size class is evicted.
+  static final long DEFAULT_IDLE_EVICT_NANOS = 10000000000L;
   // Every dimension (e.g. width, height, stride) of a frame must be less than
   // this value.
   private static final long MAX_DIMENSION = 4096;
 
-  public I420Frame takeFrame(I420Frame source) {
-    long desc = summarizeFrameDimensions(source);
-    I420Frame dst = null;
-    synchronized (availableFrames) {
-      LinkedList<I420Frame> frames = availableFrames.get(desc);
-      if (frames == null) {
-        frames = new LinkedList<I420Frame>();
-        availableFrames.put(desc, frames);
+  // One free list of equally sized frames.  Slots are claimed and released
+  // with CAS only, so neither taking nor returning a frame allocates or locks.
+  private static final class SizeClass {
+    final long desc;
+    final AtomicReferenceArray<I420Frame> frames;
+    volatile long lastUsedNanos;
+
+    SizeClass(long desc, int capacity, long now) {
+      this.desc = desc;
+      this.frames = new AtomicReferenceArray<I420Frame>(capacity);
+      this.lastUsedNanos = now;
+    }
+
+    I420Frame poll() {
+      for (int i = 0, n = frames.length(); i < n; ++i) {
+        if (frames.get(i) != null) {
+          I420Frame frame = frames.getAndSet(i, null);
+          if (frame != null) {
+            return frame;
+          }
+        }
       }
-      if (!frames.isEmpty()) {
-        dst = frames.pop();
-      } else {
-        dst = new I420Frame(
-            source.width, source.height, source.yuvStrides, null);
+      return null;
+    }
+
+    boolean offer(I420Frame frame) {
+      for (int i = 0, n = frames.length(); i < n; ++i) {
+        if (frames.get(i) == null && frames.compareAndSet(i, null, frame)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    int clear() {
+      int dropped = 0;
+      for (int i = 0, n = frames.length(); i < n; ++i) {
+        if (frames.getAndSet(i, null) != null) {
+          ++dropped;
+        }
       }
+      return dropped;
+    }
+  }
+
+  private final int maxFramesPerSize;
+  private final long idleEvictNanos;
+  // Copy-on-write list of the live size classes.  There are only ever a
+  // handful, so a linear scan beats hashing (and boxing) the summary code.
+  private volatile SizeClass[] sizeClasses = new SizeClass[0];
+  private final Object sizeClassesLock = new Object();
+  private final AtomicLong nextSweepNanos;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  public FramePool() {
+    this(DEFAULT_MAX_FRAMES_PER_SIZE, DEFAULT_IDLE_EVICT_NANOS);
+  }
+
+  /**
+   * @param maxFramesPerSize frames retained per size class, extra frames
+   *     returned to the pool are left to the GC
+   * @param idleEvictNanos size classes unused for this long are evicted
+   */
+  public FramePool(int maxFramesPerSize, long idleEvictNanos) {
+    if (maxFramesPerSize < 1) {
+      throw new IllegalArgumentException("maxFramesPerSize must be positive");
+    }
+    this.maxFramesPerSize = maxFramesPerSize;
+    this.idleEvictNanos = idleEvictNanos;
+    this.nextSweepNanos = new AtomicLong(System.nanoTime() + idleEvictNanos);
+  }
+
+  public I420Frame takeFrame(I420Frame source) {
+    long desc = summarizeFrameDimensions(source);
+    long now = System.nanoTime();
+    SizeClass sizeClass = findSizeClass(desc);
+    if (sizeClass == null) {
+      sizeClass = addSizeClass(desc, now);
     }
-    return dst;
+    sizeClass.lastUsedNanos = now;
+    maybeSweep(now);
+
+    I420Frame dst = sizeClass.poll();
+    if (dst != null) {
+      hits.incrementAndGet();
+      return dst;
+    }
+    misses.incrementAndGet();
+    return new I420Frame(source.width, source.height, source.yuvStrides, null);
   }
 
   public void returnFrame(I420Frame frame) {
-    long desc = summarizeFrameDimensions(frame);
-    synchronized (availableFrames) {
-      LinkedList<I420Frame> frames = availableFrames.get(desc);
-      if (frames == null) {
-        throw new IllegalArgumentException("Unexpected frame dimensions");
-      }
-      frames.add(frame);
+    SizeClass sizeClass = findSizeClass(summarizeFrameDimensions(frame));
+    // The size class may have been evicted while the frame was out; in that
+    // case, as when the free list is full, the frame is simply dropped.
+    if (sizeClass == null || !sizeClass.offer(frame)) {
+      evictions.incrementAndGet();
     }
   }
 
+  /** Number of takeFrame() calls served from a free list. */
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  /** Number of takeFrame() calls that had to allocate a new frame. */
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  /** Number of frames dropped due to full or evicted size classes. */
+  public long getEvictionCount() {
+    return evictions.get();
+  }
+
   /** Validate that |frame| can be managed by the pool. */
   public static boolean validateDimensions(I420Frame frame) {
     return frame.width < MAX_DIMENSION && frame.height < MAX_DIMENSION &&
@@ -90,11 +183,64 @@ class FramePool {
         frame.yuvStrides[2] < MAX_DIMENSION;
   }
 
+  private SizeClass findSizeClass(long desc) {
+    SizeClass[] classes = sizeClasses;
+    for (int i = 0; i < classes.length; ++i) {
+      if (classes[i].desc == desc) {
+        return classes[i];
+      }
+    }
+    return null;
+  }
+
+  private SizeClass addSizeClass(long desc, long now) {
+    synchronized (sizeClassesLock) {
+      SizeClass existing = findSizeClass(desc);
+      if (existing != null) {
+        return existing;
+      }
+      SizeClass[] classes = sizeClasses;
+      SizeClass[] grown = new SizeClass[classes.length + 1];
+      System.arraycopy(classes, 0, grown, 0, classes.length);
+      SizeClass added = new SizeClass(desc, maxFramesPerSize, now);
+      grown[classes.length] = added;
+      sizeClasses = grown;
+      return added;
+    }
+  }
+
+  // Drop every size class that has been idle for longer than idleEvictNanos.
+  // At most one thread sweeps per interval; everyone else returns at once.
+  private void maybeSweep(long now) {
+    long due = nextSweepNanos.get();
+    if (now - due < 0
+        || !nextSweepNanos.compareAndSet(due, now + idleEvictNanos)) {
+      return;
+    }
+    synchronized (sizeClassesLock) {
+      SizeClass[] classes = sizeClasses;
+      int kept = 0;
+      SizeClass[] remaining = new SizeClass[classes.length];
+      for (int i = 0; i < classes.length; ++i) {
+        if (now - classes[i].lastUsedNanos > idleEvictNanos) {
+          evictions.addAndGet(classes[i].clear());
+        } else {
+          remaining[kept++] = classes[i];
+        }
+      }
+      if (kept != classes.length) {
+        SizeClass[] trimmed = new SizeClass[kept];
+        System.arraycopy(remaining, 0, trimmed, 0, kept);
+        sizeClasses = trimmed;
+      }
+    }
+  }
+
   // Return a code summarizing the dimensions of |frame|.  Two frames that
   // return the same summary are guaranteed to be able to store each others'
   // contents.  Used like Object.hashCode(), but we need all the bits of a long
   // to do a good job, and hashCode() returns int, so we do this.
-  private static long summarizeFrameDimensions(I420Frame frame) {
+  static long summarizeFrameDimensions(I420Frame frame) {
     long ret = frame.width;
     ret = ret * MAX_DIMENSION + frame.height;
     ret = ret * MAX_DIMENSION + frame.yuvStrides[0];
@@ -0,0 +1,118 @@
+package com.example.licodeclient.apprtc;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+import android.opengl.GLES20;
+
+/**
+ * Collects the quads of all tiles of a frame in one interleaved vertex buffer
+ * object, so a whole run of tiles sharing the same textures is drawn with a
+ * single glDrawElements call. Must only be used on the gl thread.
+ */
+class QuadBatch {
+	/** floats per vertex - x, y, u, v */
+	private static final int FLOATS_PER_VERTEX = 4;
+	private static final int BYTES_PER_FLOAT = 4;
+	private static final int VERTEX_STRIDE = FLOATS_PER_VERTEX * BYTES_PER_FLOAT;
+	private static final int VERTICES_PER_QUAD = 4;
+	private static final int INDICES_PER_QUAD = 6;
+	private static final int BYTES_PER_INDEX = 2;
+
+	/** client side copy of the vertex data, rebuilt every frame */
+	private FloatBuffer mVertexData = null;
+	/** vertex and index buffer ids - -1 while not created */
+	private final int[] mBuffers = { -1, -1 };
+	/** number of quads the gl buffers have room for */
+	private int mCapacity = 0;
+	/** number of quads added since begin() */
+	private int mCount = 0;
+
+	/** start collecting quads for a frame with up to |maxQuads| quads */
+	void begin(int maxQuads) {
+		if (maxQuads > mCapacity || mBuffers[0] == -1) {
+			allocate(Math.max(maxQuads, mCapacity));
+		}
+		mVertexData.clear();
+		mCount = 0;
+	}
+
+	/**
+	 * add a quad given as triangle strip of 4 vertices, both buffers holding
+	 * 8 floats; returns the index of the quad within the batch
+	 */
+	int add(FloatBuffer vertices, FloatBuffer texCoords) {
+		for (int i = 0; i < VERTICES_PER_QUAD; ++i) {
+			mVertexData.put(vertices.get(2 * i));
+			mVertexData.put(vertices.get(2 * i + 1));
+			mVertexData.put(texCoords.get(2 * i));
+			mVertexData.put(texCoords.get(2 * i + 1));
+		}
+		return mCount++;
+	}
+
+	/**
+	 * upload the collected quads and point the position and texture coordinate
+	 * attributes at them
+	 */
+	void upload(int posLocation, int tcLocation) {
+		GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mBuffers[0]);
+		GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mBuffers[1]);
+		if (mCount == 0) {
+			return;
+		}
+		mVertexData.flip();
+		GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER, 0, mCount
+				* VERTICES_PER_QUAD * VERTEX_STRIDE, mVertexData);
+		GLES20.glVertexAttribPointer(posLocation, 2, GLES20.GL_FLOAT, false,
+				VERTEX_STRIDE, 0);
+		GLES20.glVertexAttribPointer(tcLocation, 2, GLES20.GL_FLOAT, false,
+				VERTEX_STRIDE, 2 * BYTES_PER_FLOAT);
+	}
+
+	/** draw |count| quads starting at quad index |first| */
+	void draw(int first, int count) {
+		GLES20.glDrawElements(GLES20.GL_TRIANGLES, count * INDICES_PER_QUAD,
+				GLES20.GL_UNSIGNED_SHORT, first * INDICES_PER_QUAD
+						* BYTES_PER_INDEX);
+	}
+
+	/** forget the gl buffers - the gl context they lived in is gone */
+	void forget() {
+		mBuffers[0] = mBuffers[1] = -1;
+		mCapacity = 0;
+	}
+
+	/** (re)create the gl buffers with room for |quads| quads */
+	private void allocate(int quads) {
+		if (mBuffers[0] == -1) {
+			GLES20.glGenBuffers(2, mBuffers, 0);
+		}
+		mCapacity = quads;
+		mVertexData = ByteBuffer
+				.allocateDirect(quads * VERTICES_PER_QUAD * VERTEX_STRIDE)
+				.order(ByteOrder.nativeOrder()).asFloatBuffer();
+
+		// two triangles per quad, following the strip order 0-1-2, 2-1-3
+		ShortBuffer indices = ByteBuffer
+				.allocateDirect(quads * INDICES_PER_QUAD * BYTES_PER_INDEX)
+				.order(ByteOrder.nativeOrder()).asShortBuffer();
+		for (int quad = 0; quad < quads; ++quad) {
+			int base = quad * VERTICES_PER_QUAD;
+			indices.put((short) base).put((short) (base + 1))
+					.put((short) (base + 2)).put((short) (base + 2))
+					.put((short) (base + 1)).put((short) (base + 3));
+		}
+		indices.flip();
+
+		GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mBuffers[0]);
+		GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, mVertexData.capacity()
+				* BYTES_PER_FLOAT, null, GLES20.GL_DYNAMIC_DRAW);
+		GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mBuffers[1]);
+		GLES20.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, quads
+				* INDICES_PER_QUAD * BYTES_PER_INDEX, indices,
+				GLES20.GL_STATIC_DRAW);
+	}
+}
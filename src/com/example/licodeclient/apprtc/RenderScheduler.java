@@ -0,0 +1,102 @@
+package com.example.licodeclient.apprtc;
+
+/**
+ * Decides per stream when a queued frame is due for upload, replacing a single
+ * throttle over all streams. The focused stream is uploaded at its full source
+ * rate, all other visible streams at a configurable background rate. Each gl
+ * upload pass is limited by a pixel budget, so many streams arriving at once
+ * cannot stall a single vsync.
+ */
+class RenderScheduler {
+	/** default minimum nano seconds between two uploads of a background stream */
+	static final long DEFAULT_BACKGROUND_INTERVAL_NANOS = 66666666L;
+	/** default number of luma pixels uploaded per pass */
+	static final int DEFAULT_UPLOAD_BUDGET_PIXELS = 1280 * 720;
+	/** weight of a new sample in the arrival interval average, as 1/n */
+	private static final int ARRIVAL_SMOOTHING = 8;
+
+	/** per stream timing, owned by a frame description */
+	static class StreamRate {
+		/** last frame arrival, only touched by the delivering thread */
+		private long mLastArrivalNanos = 0L;
+		/** smoothed interval between two arriving frames */
+		private volatile long mArrivalIntervalNanos = 0L;
+		/** last time a frame of this stream was uploaded */
+		private volatile long mLastUploadNanos = 0L;
+
+		/** smoothed source frame rate of this stream, 0 if unknown */
+		float getArrivalFps() {
+			long interval = mArrivalIntervalNanos;
+			return interval > 0 ? 1e9f / interval : 0f;
+		}
+	}
+
+	/** minimum interval between uploads of non-focused streams */
+	private volatile long mBackgroundIntervalNanos = DEFAULT_BACKGROUND_INTERVAL_NANOS;
+	/** pixels that may be uploaded per pass */
+	private volatile int mUploadBudgetPixels = DEFAULT_UPLOAD_BUDGET_PIXELS;
+	/** pixels already uploaded in the current pass - gl thread only */
+	private int mPassPixels = 0;
+
+	/** set the frame rate background (non-focused) streams are limited to */
+	void setBackgroundFrameRate(float fps) {
+		mBackgroundIntervalNanos = fps > 0 ? (long) (1e9 / fps) : 0L;
+	}
+
+	/** minimum interval between two uploads of a background stream */
+	long getBackgroundIntervalNanos() {
+		return mBackgroundIntervalNanos;
+	}
+
+	/** set the number of luma pixels uploaded per gl pass */
+	void setUploadBudget(int pixels) {
+		mUploadBudgetPixels = pixels;
+	}
+
+	/** record a frame arrival - called by the delivering thread only */
+	void onFrameArrived(StreamRate rate, long now) {
+		if (rate.mLastArrivalNanos != 0L) {
+			long interval = now - rate.mLastArrivalNanos;
+			long average = rate.mArrivalIntervalNanos;
+			rate.mArrivalIntervalNanos = average == 0L ? interval : average
+					+ (interval - average) / ARRIVAL_SMOOTHING;
+		}
+		rate.mLastArrivalNanos = now;
+	}
+
+	/**
+	 * check if a stream's next frame should be uploaded now. Half an arrival
+	 * interval of slack keeps the upload rate from aliasing down to the next
+	 * lower multiple of the source rate.
+	 */
+	boolean isDue(StreamRate rate, boolean focused, long now) {
+		if (focused) {
+			return true;
+		}
+		long slack = rate.mArrivalIntervalNanos / 2;
+		return now - rate.mLastUploadNanos >= mBackgroundIntervalNanos - slack;
+	}
+
+	/** begin a new upload pass - gl thread only */
+	void beginPass() {
+		mPassPixels = 0;
+	}
+
+	/**
+	 * try to reserve budget for uploading a frame of given size in the current
+	 * pass; the first upload of a pass is always granted - gl thread only
+	 */
+	boolean reserve(int width, int height) {
+		int pixels = width * height;
+		if (mPassPixels > 0 && mPassPixels + pixels > mUploadBudgetPixels) {
+			return false;
+		}
+		mPassPixels += pixels;
+		return true;
+	}
+
+	/** record that a stream's frame was uploaded */
+	void onUploaded(StreamRate rate, long now) {
+		rate.mLastUploadNanos = now;
+	}
+}
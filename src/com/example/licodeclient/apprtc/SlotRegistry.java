@@ -0,0 +1,68 @@
+package com.example.licodeclient.apprtc;
+
+/**
+ * Hands out small integer slot indices with O(1) allocate and release, backed
+ * by a free list that grows on demand. Not thread-safe - callers synchronize.
+ */
+class SlotRegistry {
+	/** unused slot indices, the next one to hand out is on top */
+	private int[] mFree;
+	/** number of valid entries in mFree */
+	private int mFreeCount = 0;
+	/** number of slots that exist, used or free */
+	private int mCapacity = 0;
+	/** the registry never grows beyond this many slots */
+	private final int mMaxCapacity;
+
+	/**
+	 * @param initialCapacity
+	 *            slots available before the first growth
+	 * @param maxCapacity
+	 *            upper limit of slots, allocate() fails beyond that
+	 */
+	SlotRegistry(int initialCapacity, int maxCapacity) {
+		mMaxCapacity = maxCapacity;
+		mFree = new int[Math.max(1, initialCapacity)];
+		grow(Math.min(initialCapacity, maxCapacity));
+	}
+
+	/** take a free slot, growing as needed; returns -1 if all are taken */
+	int allocate() {
+		if (mFreeCount == 0) {
+			grow(Math.min(Math.max(1, mCapacity * 2), mMaxCapacity));
+			if (mFreeCount == 0) {
+				return -1;
+			}
+		}
+		return mFree[--mFreeCount];
+	}
+
+	/** hand a previously allocated slot back */
+	void release(int slot) {
+		if (slot < 0 || slot >= mCapacity) {
+			throw new IllegalArgumentException("Unknown slot " + slot);
+		}
+		mFree[mFreeCount++] = slot;
+	}
+
+	/** number of slots that exist - every allocated index is below this */
+	int capacity() {
+		return mCapacity;
+	}
+
+	/** make slots up to newCapacity available, lowest index handed out first */
+	private void grow(int newCapacity) {
+		if (newCapacity <= mCapacity) {
+			return;
+		}
+		if (mFree.length < newCapacity) {
+			int[] free = new int[newCapacity];
+			System.arraycopy(mFree, 0, free, 0, mFreeCount);
+			mFree = free;
+		}
+		for (int slot = newCapacity - 1; slot >= mCapacity; --slot) {
+			mFree[mFreeCount++] = slot;
+		}
+		mCapacity = newCapacity;
+	}
+}
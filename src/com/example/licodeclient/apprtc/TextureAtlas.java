@@ -0,0 +1,151 @@
+package com.example.licodeclient.apprtc;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+import org.webrtc.VideoRenderer.I420Frame;
+
+import android.opengl.GLES20;
+
+/**
+ * Packs video frames up to the cell size into one shared set of Y/U/V
+ * textures, so rooms with many streams need three texture objects instead of
+ * six per stream. The atlas is divided into equally sized cells, one per
+ * stream. Must only be used on the gl thread.
+ */
+class TextureAtlas {
+	/** unused pixels between two cells - keeps linear filtering of neighbours out */
+	private static final int CELL_PADDING = 2;
+	/** largest atlas edge length used, even if the gpu supports more */
+	private static final int MAX_ATLAS_SIZE = 2048;
+
+	/** maximum frame size of a cell, luma pixels - always even */
+	private final int mCellWidth, mCellHeight;
+	/** Y, U, V texture ids - -1 while not created */
+	private final int[] mTextures = { -1, -1, -1 };
+	/** edge length of the luma texture */
+	private int mSize = 0;
+	/** cells per row */
+	private int mColumns = 0;
+	/** free cells - null while not created */
+	private SlotRegistry mCells = null;
+
+	TextureAtlas(int cellWidth, int cellHeight) {
+		mCellWidth = (cellWidth + 1) & ~1;
+		mCellHeight = (cellHeight + 1) & ~1;
+	}
+
+	/** check if a frame of given size can be stored in a cell */
+	boolean fits(int width, int height) {
+		return width <= mCellWidth && height <= mCellHeight;
+	}
+
+	/** the Y, U and V textures of the atlas */
+	int[] getTextures() {
+		return mTextures;
+	}
+
+	/** create the atlas textures unless already done */
+	void create(int maxTextureSize) {
+		if (mTextures[0] != -1) {
+			return;
+		}
+		mSize = Math.min(MAX_ATLAS_SIZE, maxTextureSize) & ~1;
+		mColumns = mSize / (mCellWidth + CELL_PADDING);
+		int rows = mSize / (mCellHeight + CELL_PADDING);
+		if (mColumns == 0 || rows == 0) {
+			// not even one cell fits - every tile keeps its own textures
+			return;
+		}
+		mCells = new SlotRegistry(mColumns * rows, mColumns * rows);
+
+		// cleared to black once - the padding between cells is never written,
+		// and linear filtering would bleed undefined contents into the tiles
+		ByteBuffer black = ByteBuffer.allocateDirect(mSize * mSize);
+		GLES20.glGenTextures(3, mTextures, 0);
+		for (int i = 0; i < 3; ++i) {
+			int size = i == 0 ? mSize : mSize / 2;
+			if (i == 1) {
+				// neutral chroma
+				for (int j = 0; j < size * size; ++j) {
+					black.put(j, (byte) 128);
+				}
+			}
+			GLES20.glActiveTexture(GLES20.GL_TEXTURE0 + i);
+			GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTextures[i]);
+			GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_LUMINANCE,
+					size, size, 0, GLES20.GL_LUMINANCE,
+					GLES20.GL_UNSIGNED_BYTE, black);
+			GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D,
+					GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+			GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D,
+					GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+			GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D,
+					GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+			GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D,
+					GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+		}
+	}
+
+	/** forget all textures and cells - the gl context they lived in is gone */
+	void forget() {
+		mTextures[0] = mTextures[1] = mTextures[2] = -1;
+		mCells = null;
+	}
+
+	/** reserve a cell, returns -1 if the atlas is full or not created */
+	int allocateCell() {
+		return mCells == null ? -1 : mCells.allocate();
+	}
+
+	/** hand a cell back */
+	void releaseCell(int cell) {
+		if (mCells != null) {
+			mCells.release(cell);
+		}
+	}
+
+	/** upload the planes of |frame| into |cell| */
+	void upload(int cell, I420Frame frame) {
+		int x = cellX(cell);
+		int y = cellY(cell);
+		for (int i = 0; i < 3; ++i) {
+			int w = i == 0 ? frame.width : (frame.width + 1) / 2;
+			int h = i == 0 ? frame.height : (frame.height + 1) / 2;
+			int offsetX = i == 0 ? x : x / 2;
+			int offsetY = i == 0 ? y : y / 2;
+			GLES20.glActiveTexture(GLES20.GL_TEXTURE0 + i);
+			GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTextures[i]);
+			GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, offsetX, offsetY,
+					w, h, GLES20.GL_LUMINANCE, GLES20.GL_UNSIGNED_BYTE,
+					frame.yuvPlanes[i]);
+		}
+	}
+
+	/**
+	 * write the texture coordinates of a |width|x|height| frame in |cell| to
+	 * |texCoords|, in the same order as a full texture's 0,0 0,1 1,0 1,1
+	 */
+	void getTexCoords(int cell, int width, int height, FloatBuffer texCoords) {
+		float u0 = cellX(cell) / (float) mSize;
+		float v0 = cellY(cell) / (float) mSize;
+		float u1 = u0 + width / (float) mSize;
+		float v1 = v0 + height / (float) mSize;
+		texCoords.put(0, u0);
+		texCoords.put(1, v0);
+		texCoords.put(2, u0);
+		texCoords.put(3, v1);
+		texCoords.put(4, u1);
+		texCoords.put(5, v0);
+		texCoords.put(6, u1);
+		texCoords.put(7, v1);
+	}
+
+	private int cellX(int cell) {
+		return (cell % mColumns) * (mCellWidth + CELL_PADDING);
+	}
+
+	private int cellY(int cell) {
+		return (cell / mColumns) * (mCellHeight + CELL_PADDING);
+	}
+}
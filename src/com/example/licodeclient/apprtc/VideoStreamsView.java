@@ -30,10 +30,15 @@ package com.example.licodeclient.apprtc;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+import javax.microedition.khronos.egl.EGL10;
 import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.egl.EGLDisplay;
 import javax.microedition.khronos.opengles.GL10;
 
 import org.webrtc.VideoRenderer.I420Frame;
@@ -41,6 +46,8 @@ import org.webrtc.VideoRenderer.I420Frame;
 import android.annotation.TargetApi;
 import android.content.Context;
 import android.graphics.Color;
+import android.opengl.EGL14;
+import android.opengl.EGLSurface;
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
 import android.os.Build;
@@ -60,41 +67,163 @@ public class VideoStreamsView extends GLSurfaceView implements
 		GLSurfaceView.Renderer {
 	/** stream id for the local stream - only one allowed */
 	public static String LOCAL_STREAM_ID = "LOCAL_STREAM";
+	/** returned instead of a stream handle if no slot is left */
+	public static final int INVALID_HANDLE = -1;
+	/** bits of a stream handle holding the slot, the rest is a generation */
+	private static final int HANDLE_SLOT_BITS = 16;
+	private static final int HANDLE_SLOT_MASK = (1 << HANDLE_SLOT_BITS) - 1;
+	private static final int HANDLE_GENERATION_MASK = 0x7fff;
 
+	/**
+	 * per stream state - frames are handed from the renderer thread to the gl
+	 * thread through a triple buffer (write / ready / uploading) without locks.
+	 * The renderer thread copies into the spare frame only while the ready
+	 * slot is empty, the gl thread takes the ready frame and returns it as
+	 * spare once uploaded.
+	 */
 	private static class FrameDescription {
 		/** android screen coordinates, allows checking if something changed */
-		int left = -1, top = -1, right = -1, bottom = -1;
+		volatile int left = -1, top = -1, right = -1, bottom = -1;
 		/** index of the associated float buffer */
 		int bufferIndex = -1;
-		/** stored frame to render next */
-		I420Frame frameToRender;
+		/** handle given out for this stream, slot plus generation */
+		int handle = INVALID_HANDLE;
+		/** whether the placeholder of this stream is currently shown */
+		volatile boolean visible = true;
+		/** latest copied frame, waiting to be uploaded */
+		final AtomicReference<I420Frame> readyFrame = new AtomicReference<I420Frame>();
+		/** recycled frame the renderer thread copies into next */
+		final AtomicReference<I420Frame> spareFrame = new AtomicReference<I420Frame>();
+		/** arrival and upload timing, used for scheduling uploads */
+		final RenderScheduler.StreamRate rate = new RenderScheduler.StreamRate();
+
+		/** check if anything of this stream ends up on screen */
+		boolean isDisplayed() {
+			return visible && right > left && bottom > top;
+		}
 	}
 
 	private final static String TAG = "VideoStreamsView";
-	/** minimum nano seconds between drawing two frames - over all video streams */
-	private static final long MIN_NANOS_BETWEEN_FRAMES = 66666666L;
-	/** stores system nano time of last rendering */
-	private volatile long mLastRendered = 0L;
-	// [0] are local Y,U,V, [1] are remote Y,U,V.
-	private int[][] yuvTextures = { { -1, -1, -1 }, // 0
-			{ -1, -1, -1 }, // 1
-			{ -1, -1, -1 }, // 2
-			{ -1, -1, -1 }, // 3
-			{ -1, -1, -1 }, // 4
-			{ -1, -1, -1 }, // 5
-			{ -1, -1, -1 }, // 6
-			{ -1, -1, -1 }, // 7
-			{ -1, -1, -1 } }; // 8
-	/** track for each texture triplet if a frame is available */
-	private boolean[] seenFrameForTexture = new boolean[yuvTextures.length];
-	/** vertices for each texture triplet */
-	private FloatBuffer[] mVertices = new FloatBuffer[yuvTextures.length];
+	/** decides which stream's frames are uploaded when */
+	private final RenderScheduler mScheduler = new RenderScheduler();
+	/** rotates the upload order of background streams between passes */
+	private int mUploadRotation = 0;
+	/** set if the last upload pass ran out of budget - gl thread only */
+	private boolean mUploadsPending = false;
+	/** a delayed upload pass for frames that were not due yet is posted */
+	private final AtomicBoolean mDeferredUpdatePosted = new AtomicBoolean(false);
+	/** stream slots available before the slot registry first grows */
+	private static final int INITIAL_SLOTS = 9;
+	/** maximum number of streams displayed at once */
+	private static final int MAX_SLOTS = 256;
+	/**
+	 * texture sets per stream - uploads alternate between them, so the gpu
+	 * never waits for a texture still used by the previous draw
+	 */
+	private static final int TEXTURE_SETS = 2;
+	/** more damaged tiles than this in a frame redraw the whole view */
+	private static final int MAX_DAMAGE_RECTS = 8;
+	/**
+	 * largest frame size stored in the texture atlas - licode's usual
+	 * 640x480, 12 cells of it fit a 2048 atlas
+	 */
+	private static final int ATLAS_CELL_WIDTH = 640, ATLAS_CELL_HEIGHT = 480;
+
+	/** gl state of one stream slot - textures and where to draw them */
+	private static class Tile {
+		// [texture set][Y,U,V] texture ids, -1 if not generated yet.
+		final int[][] yuvTextures = new int[TEXTURE_SETS][3];
+		/** allocated storage size of each texture set */
+		final int[] textureWidths = new int[TEXTURE_SETS],
+				textureHeights = new int[TEXTURE_SETS];
+		/** texture set holding the newest uploaded frame */
+		int drawnTextureSet = 0;
+		/** cell in the texture atlas, -1 if the tile uses its own textures */
+		int atlasCell = -1;
+		/** track if a frame is available */
+		volatile boolean seenFrame = false;
+		/** frame, position or visibility changed since the last draw */
+		volatile boolean damaged = true;
+		/** area in gl window coordinates - x0, y0, x1, y1 - gl thread only */
+		final int[] rect = new int[4];
+		/** whether the tile was drawn into rect last frame - gl thread only */
+		boolean drawn = false;
+		/**
+		 * drawn in the current frame, a tile in several damage rects counts
+		 * once - gl thread only
+		 */
+		boolean redrawn = false;
+		/** vertices of the tile */
+		final FloatBuffer vertices = directNativeFloatBuffer(new float[] { -1,
+				1, -1, .9f, -.9f, 1, -.9f, .9f });
+		/** texture coordinates, a cell of the atlas or the full texture */
+		final FloatBuffer texCoords = directNativeFloatBuffer(FULL_TEXTURE_COORDS);
+
+		/** drop all texture ids - storage is allocated again on next upload */
+		void forgetTextures() {
+			for (int set = 0; set < TEXTURE_SETS; ++set) {
+				Arrays.fill(yuvTextures[set], -1);
+				textureWidths[set] = 0;
+				textureHeights[set] = 0;
+			}
+			atlasCell = -1;
+			texCoords.put(FULL_TEXTURE_COORDS).position(0);
+			seenFrame = false;
+			drawn = false;
+		}
+	}
+
+	/** hands out the slot (bufferIndex) of each stream - guarded by frameDescriptions */
+	private final SlotRegistry mSlots = new SlotRegistry(INITIAL_SLOTS,
+			MAX_SLOTS);
+	/** tile per slot, replaced by a larger copy whenever the slots grow */
+	private volatile Tile[] mTiles = new Tile[0];
+	/**
+	 * stream per slot for frame delivery by handle, without locking - grown
+	 * with mTiles, written under the frameDescriptions lock
+	 */
+	private volatile AtomicReferenceArray<FrameDescription> mStreams = new AtomicReferenceArray<FrameDescription>(
+			0);
+	/** generation of the next stream handle - guarded by frameDescriptions */
+	private int mNextGeneration = 1;
+	/** number of handles given out, written under frameDescriptions */
+	private volatile int mRegistrations = 0;
+	/** shared textures for streams up to the cell size */
+	private final TextureAtlas mAtlas = new TextureAtlas(ATLAS_CELL_WIDTH,
+			ATLAS_CELL_HEIGHT);
+	/**
+	 * whether streams are packed into the texture atlas - tiles with their
+	 * own textures cannot share a draw call
+	 */
+	private volatile boolean mAtlasEnabled = true;
+	/** quads of all tiles drawn in a frame */
+	private final QuadBatch mBatch = new QuadBatch();
+	/** tiles in the order they are drawn, focused last - gl thread only */
+	private Tile[] mDrawOrder = new Tile[0];
+	/** damaged areas of the current frame, x0, y0, x1, y1 each - gl thread only */
+	private final int[] mDamage = new int[MAX_DAMAGE_RECTS * 4];
+	/** everything has to be redrawn next frame, e.g. after a layout change */
+	private final AtomicBoolean mFullRedraw = new AtomicBoolean(true);
+	/** the color buffer is kept across swaps, so undamaged tiles can stay */
+	private volatile boolean mBufferPreserved = false;
+	/** size of the gl surface in pixels */
+	private int mSurfaceWidth = 0, mSurfaceHeight = 0;
+	/** frames drawn, tiles redrawn and tiles left untouched since creation */
+	private volatile long mFramesDrawn = 0, mTilesRedrawn = 0,
+			mTilesSkipped = 0;
+	/** check for gl errors after each gl operation - stalls the pipeline */
+	private static volatile boolean sGlDebug = false;
+	/** GL_MAX_TEXTURE_SIZE of the current context */
+	private int mMaxTextureSize = 0;
+	/** duration of the last frame upload */
+	private volatile long mLastUploadNanos = 0L;
 	/** focused texture - the one that's drawn above everything else */
-	private int mFocusIndex = -1;
+	private volatile int mFocusIndex = -1;
 	private int posLocation = -1;
-	private long lastFPSLogTime = System.nanoTime();
-	private long numFramesSinceLastLog = 0;
+	private int tcLocation = -1;
 	private FramePool framePool = new FramePool();
+	/** decodes vp8 streams into this view - created on first use */
+	private VpxDecoderPipeline mDecoderPipeline = null;
 	// Accessed on multiple threads! Must be synchronized.
 	private HashMap<String, FrameDescription> frameDescriptions = new HashMap<String, FrameDescription>();
 	/** width/height dimension of this view as set by layout */
@@ -108,111 +237,361 @@ public class VideoStreamsView extends GLSurfaceView implements
 		super(c);
 		setPreserveEGLContextOnPause(true);
 		setEGLContextClientVersion(2);
+		setEGLConfigChooser(new PreservingConfigChooser());
 		setRenderer(this);
 		setRenderMode(RENDERMODE_WHEN_DIRTY);
+	}
 
-		for (int i = 0; i < mVertices.length; ++i) {
-			mVertices[i] = directNativeFloatBuffer(new float[] { -1, 1, -1,
-					.9f, -.9f, 1, -.9f, .9f });
-			// { -1, 1, -1, -1, 1, 1, 1, -1 });
+	/**
+	 * drop all texture ids and sizes - a new gl context starts without any
+	 * textures, storage is allocated again on the next upload
+	 */
+	private void forgetTextures() {
+		for (Tile tile : mTiles) {
+			tile.forgetTextures();
 		}
+		mAtlas.forget();
+		mBatch.forget();
 	}
 
 	/** create a new frame description and put it in the map */
 	private FrameDescription createFrameDescription(String streamId) {
 		FrameDescription result = new FrameDescription();
 		frameDescriptions.put(streamId, result);
-		result.bufferIndex = findFreeTexture();
+		result.bufferIndex = allocateSlot();
+		if (result.bufferIndex != -1) {
+			result.handle = (mNextGeneration << HANDLE_SLOT_BITS)
+					| result.bufferIndex;
+			mNextGeneration = mNextGeneration % HANDLE_GENERATION_MASK + 1;
+			mStreams.set(result.bufferIndex, result);
+			++mRegistrations;
+		}
 		return result;
 	}
 
+	/** look up the stream a handle was given out for, null if stale */
+	private FrameDescription getStream(int handle) {
+		if (handle == INVALID_HANDLE) {
+			return null;
+		}
+		AtomicReferenceArray<FrameDescription> streams = mStreams;
+		int slot = handle & HANDLE_SLOT_MASK;
+		if (slot >= streams.length()) {
+			return null;
+		}
+		FrameDescription desc = streams.get(slot);
+		return desc != null && desc.handle == handle ? desc : null;
+	}
+
+	/**
+	 * take a free slot for a stream, growing the tiles along with the
+	 * registry; returns -1 if all slots are taken
+	 */
+	private int allocateSlot() {
+		int slot = mSlots.allocate();
+		Tile[] tiles = mTiles;
+		if (slot != -1 && slot >= tiles.length) {
+			Tile[] grown = new Tile[mSlots.capacity()];
+			System.arraycopy(tiles, 0, grown, 0, tiles.length);
+			for (int i = tiles.length; i < grown.length; ++i) {
+				grown[i] = new Tile();
+				grown[i].forgetTextures();
+			}
+			AtomicReferenceArray<FrameDescription> streams = new AtomicReferenceArray<FrameDescription>(
+					grown.length);
+			for (int i = 0; i < tiles.length; ++i) {
+				streams.set(i, mStreams.get(i));
+			}
+			mTiles = grown;
+			mStreams = streams;
+		}
+		return slot;
+	}
+
+	/**
+	 * the pipeline decoding vp8 streams straight into this view's frames -
+	 * shut down when the view is detached, a new one is created on the next
+	 * call
+	 */
+	public synchronized VpxDecoderPipeline getDecoderPipeline() {
+		if (mDecoderPipeline == null) {
+			mDecoderPipeline = new VpxDecoderPipeline(this);
+		}
+		return mDecoderPipeline;
+	}
+
+	@Override
+	protected void onDetachedFromWindow() {
+		synchronized (this) {
+			if (mDecoderPipeline != null) {
+				mDecoderPipeline.shutdown();
+				mDecoderPipeline = null;
+			}
+		}
+		super.onDetachedFromWindow();
+	}
+
 	/** Queue |frame| to be uploaded. */
 	public void queueFrame(final String stream, I420Frame frame) {
+		queueFrame(getStreamHandle(stream), frame);
+	}
+
+	/**
+	 * Queue |frame| of the stream with given handle to be uploaded. Returns
+	 * false if the handle is stale, i.e. the stream was removed - fetch a new
+	 * one with getStreamHandle() then.
+	 */
+	public boolean queueFrame(int handle, I420Frame frame) {
 		// Paying for the copy of the YUV data here allows CSC and painting time
 		// to get spent on the render thread instead of the UI thread.
 		abortUnless(FramePool.validateDimensions(frame), "Frame too large!");
-		// boolean needToScheduleRender;
-		synchronized (frameDescriptions) {
-			// A new render needs to be scheduled (via updateFrames()) iff there
-			// isn't
-			// already a render scheduled, which is true iff framesToRender is
-			// empty.
-			// needToScheduleRender = frameDescriptions.isEmpty();
-			FrameDescription desc = frameDescriptions.get(stream);
-			// if (desc == null)
-			// {
-			// desc = createFrameDescription(stream);
-			// }
-			if (desc != null && desc.bufferIndex != -1) {
-				I420Frame frameToDrop = desc.frameToRender;
-				if (desc.bufferIndex != -1) {
-					final I420Frame frameCopy = framePool.takeFrame(frame)
-							.copyFrom(frame);
-					desc.frameToRender = frameCopy;
-				}
-				if (frameToDrop != null) {
-					framePool.returnFrame(frameToDrop);
-				}
+		FrameDescription desc = getStream(handle);
+		if (desc == null) {
+			return false;
+		}
+		long now = System.nanoTime();
+		mScheduler.onFrameArrived(desc.rate, now);
+		if (!desc.isDisplayed()) {
+			// nobody would see this frame - don't pay for the copy
+			return true;
+		}
+
+		// while the previous copy has not been uploaded yet, a new copy would
+		// only be dropped
+		if (desc.readyFrame.get() == null) {
+			I420Frame frameCopy = takeSpareFrame(desc, frame);
+			frameCopy.copyFrom(frame);
+			offerFrame(desc, frameCopy);
+		}
+
+		if (mScheduler.isDue(desc.rate, desc.bufferIndex == mFocusIndex, now)) {
+			scheduleUpdate();
+		}
+		return true;
+	}
+
+	/** check if a stream handle is still valid, see queueFrame() */
+	boolean isStreamHandleValid(int handle) {
+		return getStream(handle) != null;
+	}
+
+	/**
+	 * Take a frame shaped like |template| for the stream with given handle to
+	 * be filled and handed over with queueFilledFrame() - saves the copy of
+	 * queueFrame() for frames produced in java. Returns null if the frame
+	 * would not be shown anyway or the handle is stale.
+	 */
+	I420Frame takeFrame(int handle, I420Frame template) {
+		abortUnless(FramePool.validateDimensions(template), "Frame too large!");
+		FrameDescription desc = getStream(handle);
+		if (desc == null) {
+			return null;
+		}
+		long now = System.nanoTime();
+		mScheduler.onFrameArrived(desc.rate, now);
+		if (!desc.isDisplayed()) {
+			return null;
+		}
+		if (desc.readyFrame.get() != null) {
+			// the previous frame is still waiting for its upload
+			if (mScheduler.isDue(desc.rate, desc.bufferIndex == mFocusIndex,
+					now)) {
+				scheduleUpdate();
 			}
+			return null;
 		}
-		long dt = System.nanoTime() - mLastRendered;
-		if (dt > MIN_NANOS_BETWEEN_FRAMES
-				&& mRenderRequested.compareAndSet(false, true)) {
-			queueEvent(new Runnable() {
-				public void run() {
-					updateFrames();
-				}
-			});
+		return takeSpareFrame(desc, template);
+	}
+
+	/**
+	 * Queue a frame taken with takeFrame() and filled since - the view owns it
+	 * from now on.
+	 */
+	void queueFilledFrame(int handle, I420Frame frame) {
+		FrameDescription desc = getStream(handle);
+		if (desc == null) {
+			framePool.returnFrame(frame);
+			return;
+		}
+		offerFrame(desc, frame);
+		if (mScheduler.isDue(desc.rate, desc.bufferIndex == mFocusIndex,
+				System.nanoTime())) {
+			scheduleUpdate();
+		}
+	}
+
+	/** a frame to copy |frame| into, the stream's spare one if it fits */
+	private I420Frame takeSpareFrame(FrameDescription desc, I420Frame frame) {
+		I420Frame frameCopy = desc.spareFrame.getAndSet(null);
+		// copyFrom() requires equal strides too, not only equal sizes
+		if (frameCopy != null
+				&& (frameCopy.width != frame.width
+						|| frameCopy.height != frame.height || !Arrays.equals(
+						frameCopy.yuvStrides, frame.yuvStrides))) {
+			framePool.returnFrame(frameCopy);
+			frameCopy = null;
+		}
+		if (frameCopy == null) {
+			frameCopy = framePool.takeFrame(frame);
+		}
+		return frameCopy;
+	}
+
+	/** make |frame| the one uploaded next, unless another one got there first */
+	private void offerFrame(FrameDescription desc, I420Frame frame) {
+		if (!desc.readyFrame.compareAndSet(null, frame)) {
+			recycleFrame(desc, frame);
+		}
+	}
+
+	/** run an upload pass on the gl thread - unless one is already on its way */
+	private void scheduleUpdate() {
+		if (mRenderRequested.compareAndSet(false, true)) {
+			queueEvent(mUpdateFrames);
+		}
+	}
+
+	/** runs an upload pass, on the gl thread */
+	private final Runnable mUpdateFrames = new Runnable() {
+		public void run() {
+			updateFrames();
+		}
+	};
+
+	/** retries frames that were not yet due in the last upload pass */
+	private final Runnable mDeferredUpdate = new Runnable() {
+		public void run() {
+			mDeferredUpdatePosted.set(false);
+			scheduleUpdate();
+		}
+	};
+
+	/**
+	 * limit the frame rate of all streams but the focused one, which is always
+	 * drawn at its full source rate
+	 */
+	public void setBackgroundFrameRate(float fps) {
+		mScheduler.setBackgroundFrameRate(fps);
+	}
+
+	/** limit the number of luma pixels uploaded to the gpu per drawn frame */
+	public void setUploadBudget(int pixels) {
+		mScheduler.setUploadBudget(pixels);
+	}
+
+	/** hand a frame back to the stream's spare slot, or the pool if taken */
+	private void recycleFrame(FrameDescription desc, I420Frame frame) {
+		if (frame != null && !desc.spareFrame.compareAndSet(null, frame)) {
+			framePool.returnFrame(frame);
 		}
 	}
 
-	// Upload the planes from |framesToRender| to the textures owned by this
-	// View.
+	/** drop all frames still held by a removed stream */
+	private void releaseFrames(FrameDescription desc) {
+		I420Frame frame = desc.readyFrame.getAndSet(null);
+		if (frame != null) {
+			framePool.returnFrame(frame);
+		}
+		frame = desc.spareFrame.getAndSet(null);
+		if (frame != null) {
+			framePool.returnFrame(frame);
+		}
+	}
+
+	// Upload the due frames of all streams to the textures owned by this
+	// View. The focused stream goes first, the others share what is left of
+	// the upload budget in rotating order.
 	private void updateFrames() {
+		long now = System.nanoTime();
+		boolean uploaded = false;
+		boolean overBudget = false;
+		boolean notDue = false;
+		mScheduler.beginPass();
 		synchronized (frameDescriptions) {
-			for (String key : frameDescriptions.keySet()) {
-				FrameDescription desc = frameDescriptions.get(key);
-				if (desc.frameToRender != null) {
-					if (desc.bufferIndex != -1) {
-						seenFrameForTexture[desc.bufferIndex] = true;
-						texImage2D(desc.frameToRender,
-								yuvTextures[desc.bufferIndex]);
-					}
-					framePool.returnFrame(desc.frameToRender);
-					desc.frameToRender = null;
+			AtomicReferenceArray<FrameDescription> streams = mStreams;
+			int n = streams.length();
+			int focus = mFocusIndex;
+			if (focus != -1 && focus < n && streams.get(focus) != null) {
+				uploaded |= uploadFrame(streams.get(focus), true, now) == UPLOAD_DONE;
+			}
+
+			int start = n > 0 ? mUploadRotation++ % n : 0;
+			for (int i = 0; i < n; ++i) {
+				int slot = (start + i) % n;
+				FrameDescription desc = streams.get(slot);
+				if (desc == null || slot == focus) {
+					continue;
 				}
+				int result = uploadFrame(desc, false, now);
+				uploaded |= result == UPLOAD_DONE;
+				overBudget |= result == UPLOAD_OVER_BUDGET;
+				notDue |= result == UPLOAD_NOT_DUE;
 			}
 		}
-		// abortUnless(frameUpdated, "Nothing to render!");
-		requestRender();
+		mUploadsPending = overBudget;
+		if (notDue && mDeferredUpdatePosted.compareAndSet(false, true)) {
+			postDelayed(mDeferredUpdate,
+					mScheduler.getBackgroundIntervalNanos() / 1000000L);
+		}
+		if (uploaded || overBudget) {
+			requestRender();
+		}
 	}
 
-	/** check for a free texture in the yuv-texture array */
-	private int findFreeTexture() {
-		boolean taken[] = new boolean[yuvTextures.length];
-		for (String key : frameDescriptions.keySet()) {
-			FrameDescription desc = frameDescriptions.get(key);
-			if (desc.bufferIndex != -1) {
-				taken[desc.bufferIndex] = true;
-			}
+	/** results of uploadFrame() */
+	private static final int UPLOAD_DONE = 0, UPLOAD_NOT_DUE = 1,
+			UPLOAD_OVER_BUDGET = 2, UPLOAD_NOTHING = 3;
+
+	/** upload the ready frame of a stream, if due and within budget */
+	private int uploadFrame(FrameDescription desc, boolean focused, long now) {
+		if (desc.readyFrame.get() == null) {
+			return UPLOAD_NOTHING;
 		}
-		for (int i = 0; i < taken.length; ++i) {
-			if (taken[i] == false) {
-				return i;
-			}
+		if (!mScheduler.isDue(desc.rate, focused, now)) {
+			return UPLOAD_NOT_DUE;
+		}
+		I420Frame frame = desc.readyFrame.get();
+		if (!mScheduler.reserve(frame.width, frame.height)) {
+			return UPLOAD_OVER_BUDGET;
 		}
-		return -1;
+		frame = desc.readyFrame.getAndSet(null);
+		Tile tile = mTiles[desc.bufferIndex];
+		uploadTextures(frame, tile);
+		tile.seenFrame = true;
+		tile.damaged = true;
+		mScheduler.onUploaded(desc.rate, now);
+		recycleFrame(desc, frame);
+		return UPLOAD_DONE;
 	}
 
-	/** register a stream to allow it to send images */
-	public boolean addStream(String streamId) {
+	/**
+	 * register a stream to allow it to send images - returns the handle to
+	 * deliver its frames with, the existing one if already registered, or
+	 * INVALID_HANDLE if no slot is left
+	 */
+	public int addStream(String streamId) {
 		synchronized (frameDescriptions) {
-			if (frameDescriptions.containsKey(streamId)) {
-				return false;
+			FrameDescription desc = frameDescriptions.get(streamId);
+			if (desc == null) {
+				desc = createFrameDescription(streamId);
 			}
+			return desc.handle;
+		}
+	}
 
-			frameDescriptions.put(streamId, createFrameDescription(streamId));
-			return true;
+	/**
+	 * changes whenever a stream gets a handle - a lookup with
+	 * getStreamHandle() that failed only has to be repeated once it changed
+	 */
+	public int getRegistrations() {
+		return mRegistrations;
+	}
+
+	/** handle of a registered stream, INVALID_HANDLE if not registered */
+	public int getStreamHandle(String streamId) {
+		synchronized (frameDescriptions) {
+			FrameDescription desc = frameDescriptions.get(streamId);
+			return desc != null ? desc.handle : INVALID_HANDLE;
 		}
 	}
 
@@ -220,19 +599,58 @@ public class VideoStreamsView extends GLSurfaceView implements
 	public void removeStream(String stream) {
 		synchronized (frameDescriptions) {
 			FrameDescription desc = frameDescriptions.remove(stream);
+			if (desc != null) {
+				releaseFrames(desc);
+			}
 			if (desc != null && desc.bufferIndex != -1) {
-				seenFrameForTexture[desc.bufferIndex] = false;
+				final int slot = desc.bufferIndex;
+				final Tile tile = mTiles[slot];
+				tile.seenFrame = false;
+				tile.damaged = true;
+				mStreams.set(slot, null);
+				mSlots.release(slot);
+				// the atlas is gl thread only - the cell is handed back there,
+				// unless a new stream took over the slot and its cell meanwhile
+				queueEvent(new Runnable() {
+					@Override
+					public void run() {
+						synchronized (frameDescriptions) {
+							if (tile.atlasCell != -1
+									&& mStreams.get(slot) == null) {
+								mAtlas.releaseCell(tile.atlasCell);
+								tile.atlasCell = -1;
+								tile.texCoords.put(FULL_TEXTURE_COORDS)
+										.position(0);
+							}
+						}
+					}
+				});
 
 				if (mFocusIndex == desc.bufferIndex) {
 					mFocusIndex = -1;
 				}
+				requestRender();
 			}
 		}
+	}
 
-		// if (frameDescriptions.size() == 0)
-		// {
+	/**
+	 * tells whether the placeholder of a stream is visible - frames of hidden
+	 * streams are not copied at all
+	 */
+	public void setStreamVisible(String stream, boolean visible) {
+		synchronized (frameDescriptions) {
+			FrameDescription desc = frameDescriptions.get(stream);
+			if (desc == null || desc.visible == visible) {
+				return;
+			}
+			desc.visible = visible;
+			if (desc.bufferIndex != -1) {
+				// drawn or cleared with the next frame
+				mTiles[desc.bufferIndex].damaged = true;
+			}
+		}
 		requestRender();
-		// }
 	}
 
 	/** position a stream on this view */
@@ -250,11 +668,17 @@ public class VideoStreamsView extends GLSurfaceView implements
 			return;
 		}
 
+		int oldFocus = mFocusIndex;
 		if (mFocusIndex == desc.bufferIndex && focus == false) {
 			mFocusIndex = -1;
 		} else if (focus) {
 			mFocusIndex = desc.bufferIndex;
 		}
+		if (oldFocus != mFocusIndex) {
+			// stacking order changed, overlapping tiles need a redraw
+			mFullRedraw.set(true);
+			requestRender();
+		}
 
 		boolean leftChanged = left != desc.left;
 		boolean topChanged = top != desc.top;
@@ -269,7 +693,7 @@ public class VideoStreamsView extends GLSurfaceView implements
 		float width = mWidth;
 		float height = mHeight;
 
-		FloatBuffer vertices = mVertices[desc.bufferIndex];
+		FloatBuffer vertices = mTiles[desc.bufferIndex].vertices;
 		if (leftChanged) {
 			float x0 = (left - width) / width;
 			vertices.put(0, x0);
@@ -292,6 +716,7 @@ public class VideoStreamsView extends GLSurfaceView implements
 		}
 
 		if (leftChanged || topChanged || rightChanged || bottomChanged) {
+			mTiles[desc.bufferIndex].damaged = true;
 			requestRender();
 		}
 	}
@@ -304,12 +729,14 @@ public class VideoStreamsView extends GLSurfaceView implements
 		if (changed) {
 			mWidth = .5f * (right - left);
 			mHeight = .5f * (bottom - top);
+			mFullRedraw.set(true);
 			synchronized (frameDescriptions) {
-				for (String key : frameDescriptions.keySet()) {
-					FrameDescription desc = frameDescriptions.get(key);
+				AtomicReferenceArray<FrameDescription> streams = mStreams;
+				for (int i = 0; i < streams.length(); ++i) {
+					FrameDescription desc = streams.get(i);
 
-					if (desc.bufferIndex != -1) {
-						FloatBuffer vertices = mVertices[desc.bufferIndex];
+					if (desc != null) {
+						FloatBuffer vertices = mTiles[desc.bufferIndex].vertices;
 						float x0 = (desc.left - mWidth) / mWidth;
 						vertices.put(0, x0);
 						vertices.put(2, x0);
@@ -351,70 +778,133 @@ public class VideoStreamsView extends GLSurfaceView implements
 			return;
 		}
 
-		// Generate 3 texture ids for Y/U/V and place them into |textures|,
-		// allocating enough storage for |width|x|height| pixels.
-		int[] textures = yuvTextures[bufferIndex];
-		if (textures[0] != -1) {
-			GLES20.glDeleteTextures(3, textures, 0);
+		if (mAtlasEnabled && mAtlas.fits(width, height)) {
+			// stored in the atlas, no own textures needed
+			return;
+		}
+		Tile tile = mTiles[bufferIndex];
+		for (int set = 0; set < TEXTURE_SETS; ++set) {
+			allocateTextures(tile, set, width, height);
+		}
+		checkNoGLES2Error();
+	}
+
+	/**
+	 * pack streams with frames of up to 640x480 into shared atlas textures
+	 * instead of giving each its own - keeps the gl object count low in large
+	 * rooms and draws all of them with one call; on by default. Larger
+	 * streams, and those beyond the cells the gpu's texture size allows - 12
+	 * at 2048 - are still drawn one call each
+	 */
+	public void setTextureAtlasEnabled(boolean enabled) {
+		mAtlasEnabled = enabled;
+	}
+
+	/**
+	 * make sure a texture set of a tile exists and has storage for
+	 * |width|x|height| pixels - storage is only reallocated on size changes
+	 */
+	private void allocateTextures(Tile tile, int set, int width, int height) {
+		int[] textures = tile.yuvTextures[set];
+		boolean generated = textures[0] == -1;
+		if (generated) {
+			GLES20.glGenTextures(3, textures, 0);
+		} else if (tile.textureWidths[set] == width
+				&& tile.textureHeights[set] == height) {
+			return;
 		}
 
-		GLES20.glGenTextures(3, textures, 0);
 		for (int i = 0; i < 3; ++i) {
-			int w = i == 0 ? width : width / 2;
-			int h = i == 0 ? height : height / 2;
+			int w = i == 0 ? width : (width + 1) / 2;
+			int h = i == 0 ? height : (height + 1) / 2;
 			GLES20.glActiveTexture(GLES20.GL_TEXTURE0 + i);
 			GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textures[i]);
 			GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_LUMINANCE,
 					w, h, 0, GLES20.GL_LUMINANCE, GLES20.GL_UNSIGNED_BYTE, null);
-			GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D,
-					GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
-			GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D,
-					GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
-			GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D,
-					GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
-			GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D,
-					GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+			if (generated) {
+				GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D,
+						GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+				GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D,
+						GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+				GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D,
+						GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+				GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D,
+						GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+			}
 		}
-		checkNoGLES2Error();
+		tile.textureWidths[set] = width;
+		tile.textureHeights[set] = height;
+	}
+
+	/** access the time it took to upload the last frame, in nano seconds */
+	public long getLastUploadNanos() {
+		return mLastUploadNanos;
 	}
 
 	@Override
 	public void onSurfaceChanged(GL10 unused, int width, int height) {
 		GLES20.glViewport(0, 0, width, height);
+		mSurfaceWidth = width;
+		mSurfaceHeight = height;
+		mBufferPreserved = preserveColorBuffer();
+		Log.d(TAG, "Color buffer preserved across swaps: " + mBufferPreserved);
+		mFullRedraw.set(true);
 		checkNoGLES2Error();
 	}
 
+	/**
+	 * ask egl to keep the color buffer across swaps, so a frame only has to
+	 * redraw damaged tiles; returns false if the surface does not support it
+	 */
+	@TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
+	private static boolean preserveColorBuffer() {
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR1) {
+			return false;
+		}
+		android.opengl.EGLDisplay display = EGL14.eglGetCurrentDisplay();
+		EGLSurface surface = EGL14.eglGetCurrentSurface(EGL14.EGL_DRAW);
+		if (!EGL14.eglSurfaceAttrib(display, surface,
+				EGL14.EGL_SWAP_BEHAVIOR, EGL14.EGL_BUFFER_PRESERVED)) {
+			return false;
+		}
+		int[] value = new int[1];
+		return EGL14.eglQuerySurface(display, surface,
+				EGL14.EGL_SWAP_BEHAVIOR, value, 0)
+				&& value[0] == EGL14.EGL_BUFFER_PRESERVED;
+	}
+
+	/** number of frames drawn since creation */
+	public long getFramesDrawn() {
+		return mFramesDrawn;
+	}
+
+	/** number of tiles drawn again since creation */
+	public long getTilesRedrawn() {
+		return mTilesRedrawn;
+	}
+
+	/** number of tiles left untouched in drawn frames since creation */
+	public long getTilesSkipped() {
+		return mTilesSkipped;
+	}
+
 	@Override
 	public void onDrawFrame(GL10 unused) {
 		GLES20.glClearColor(mRed, mGreen, mBlue, 1.0f);
-		GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
-		int focus = mFocusIndex;
+		drawTiles(mFocusIndex);
 
-		for (int i = 0; i < yuvTextures.length; ++i) {
-			if (seenFrameForTexture[i] && focus != i) {
-				drawRectangle(yuvTextures[i], mVertices[i]);
-			}
-		}
-
-		if (focus != -1 && seenFrameForTexture[focus]) {
-			drawRectangle(yuvTextures[focus], mVertices[focus]);
-		}
-
-		++numFramesSinceLastLog;
-		long now = System.nanoTime();
-		mLastRendered = now;
 		mRenderRequested.set(false);
-		if (lastFPSLogTime == -1 || now - lastFPSLogTime > 1e9) {
-			double fps = numFramesSinceLastLog / ((now - lastFPSLogTime) / 1e9);
-			Log.d(TAG, "Rendered FPS: " + fps);
-			lastFPSLogTime = now;
-			numFramesSinceLastLog = 1;
+		if (mUploadsPending) {
+			// budget ran out last pass - continue with the next vsync
+			scheduleUpdate();
 		}
 		checkNoGLES2Error();
 	}
 
 	@Override
 	public void onSurfaceCreated(GL10 unused, EGLConfig config) {
+		forgetTextures();
+
 		int program = GLES20.glCreateProgram();
 		addShaderTo(GLES20.GL_VERTEX_SHADER, VERTEX_SHADER_STRING, program);
 		addShaderTo(GLES20.GL_FRAGMENT_SHADER, FRAGMENT_SHADER_STRING, program);
@@ -431,13 +921,19 @@ public class VideoStreamsView extends GLSurfaceView implements
 		GLES20.glUniform1i(GLES20.glGetUniformLocation(program, "u_tex"), 1);
 		GLES20.glUniform1i(GLES20.glGetUniformLocation(program, "v_tex"), 2);
 
-		// Actually set in drawRectangle(), but queried only once here.
+		// Actually set in QuadBatch.upload(), but queried only once here.
 		posLocation = GLES20.glGetAttribLocation(program, "in_pos");
+		GLES20.glEnableVertexAttribArray(posLocation);
 
-		int tcLocation = GLES20.glGetAttribLocation(program, "in_tc");
+		tcLocation = GLES20.glGetAttribLocation(program, "in_tc");
 		GLES20.glEnableVertexAttribArray(tcLocation);
-		GLES20.glVertexAttribPointer(tcLocation, 2, GLES20.GL_FLOAT, false, 0,
-				textureCoords);
+
+		int[] maxTextureSize = new int[1];
+		GLES20.glGetIntegerv(GLES20.GL_MAX_TEXTURE_SIZE, maxTextureSize, 0);
+		mMaxTextureSize = maxTextureSize[0];
+
+		// chroma rows of odd sized frames are not 4-byte aligned
+		GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 1);
 
 		GLES20.glClearColor(0.0f, 0.0f, 0.0f, 1.0f);
 		checkNoGLES2Error();
@@ -452,38 +948,223 @@ public class VideoStreamsView extends GLSurfaceView implements
 		return buffer;
 	}
 
-	// Upload the YUV planes from |frame| to |textures|.
-	private void texImage2D(I420Frame frame, int[] textures) {
+	// Upload the YUV planes from |frame| into the atlas cell of |tile|, or
+	// into its texture set that is not used by the previous draw.
+	private void uploadTextures(I420Frame frame, Tile tile) {
+		long start = System.nanoTime();
 		for (int i = 0; i < 3; ++i) {
-			ByteBuffer plane = frame.yuvPlanes[i];
-			GLES20.glActiveTexture(GLES20.GL_TEXTURE0 + i);
-			GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textures[i]);
-			int w = i == 0 ? frame.width : frame.width / 2;
-			int h = i == 0 ? frame.height : frame.height / 2;
+			int w = i == 0 ? frame.width : (frame.width + 1) / 2;
 			abortUnless(w == frame.yuvStrides[i], frame.yuvStrides[i] + "!="
 					+ w);
-			GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_LUMINANCE,
-					w, h, 0, GLES20.GL_LUMINANCE, GLES20.GL_UNSIGNED_BYTE,
-					plane);
+		}
+
+		boolean inAtlas = mAtlasEnabled
+				&& mAtlas.fits(frame.width, frame.height);
+		if (inAtlas && tile.atlasCell == -1) {
+			mAtlas.create(mMaxTextureSize);
+			tile.atlasCell = mAtlas.allocateCell();
+		} else if (!inAtlas && tile.atlasCell != -1) {
+			mAtlas.releaseCell(tile.atlasCell);
+			tile.atlasCell = -1;
+			tile.texCoords.put(FULL_TEXTURE_COORDS).position(0);
+		}
+
+		if (tile.atlasCell != -1) {
+			mAtlas.upload(tile.atlasCell, frame);
+			mAtlas.getTexCoords(tile.atlasCell, frame.width, frame.height,
+					tile.texCoords);
+		} else {
+			int set = (tile.drawnTextureSet + 1) % TEXTURE_SETS;
+			allocateTextures(tile, set, frame.width, frame.height);
+			int[] textures = tile.yuvTextures[set];
+			for (int i = 0; i < 3; ++i) {
+				ByteBuffer plane = frame.yuvPlanes[i];
+				GLES20.glActiveTexture(GLES20.GL_TEXTURE0 + i);
+				GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textures[i]);
+				int w = i == 0 ? frame.width : (frame.width + 1) / 2;
+				int h = i == 0 ? frame.height : (frame.height + 1) / 2;
+				GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, 0, w, h,
+						GLES20.GL_LUMINANCE, GLES20.GL_UNSIGNED_BYTE, plane);
+			}
+			tile.drawnTextureSet = set;
 		}
 		checkNoGLES2Error();
+
+		mLastUploadNanos = System.nanoTime() - start;
 	}
 
-	// Draw |textures| using |vertices| (X,Y coordinates).
-	private void drawRectangle(int[] textures, FloatBuffer vertices) {
-		for (int i = 0; i < 3; ++i) {
-			GLES20.glActiveTexture(GLES20.GL_TEXTURE0 + i);
-			GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textures[i]);
+	// Whether the tile of |slot| has a frame and its stream is displayed.
+	private boolean isShown(Tile[] tiles, int slot) {
+		if (!tiles[slot].seenFrame) {
+			return false;
 		}
+		AtomicReferenceArray<FrameDescription> streams = mStreams;
+		FrameDescription desc = slot < streams.length() ? streams.get(slot)
+				: null;
+		return desc != null && desc.isDisplayed();
+	}
 
-		GLES20.glVertexAttribPointer(posLocation, 2, GLES20.GL_FLOAT, false, 0,
-				vertices);
-		GLES20.glEnableVertexAttribArray(posLocation);
+	// Draw all displayed tiles with a frame from one vertex buffer, the
+	// focused one last. Atlas tiles are ordered first, so they share a single
+	// draw call; tiles with their own textures need a texture bind and call
+	// each. If the color buffer survives swaps, only damaged areas are
+	// cleared and the tiles overlapping them drawn again.
+	private void drawTiles(int focus) {
+		Tile[] tiles = mTiles;
+		if (mDrawOrder.length < tiles.length) {
+			mDrawOrder = new Tile[tiles.length];
+		}
+		boolean full = mFullRedraw.getAndSet(false) || !mBufferPreserved;
+		int damageCount = 0;
+		for (int i = 0; i < tiles.length; ++i) {
+			Tile tile = tiles[i];
+			if (!tile.damaged) {
+				continue;
+			}
+			tile.damaged = false;
+			boolean wasDrawn = tile.drawn;
+			int x0 = tile.rect[0], y0 = tile.rect[1];
+			int x1 = tile.rect[2], y1 = tile.rect[3];
+			tile.drawn = isShown(tiles, i);
+			if (!tile.drawn && !wasDrawn) {
+				continue;
+			}
+			updateRect(tile);
+			if (!wasDrawn) {
+				x0 = tile.rect[0];
+				y0 = tile.rect[1];
+				x1 = tile.rect[2];
+				y1 = tile.rect[3];
+			} else if (tile.drawn) {
+				x0 = Math.min(x0, tile.rect[0]);
+				y0 = Math.min(y0, tile.rect[1]);
+				x1 = Math.max(x1, tile.rect[2]);
+				y1 = Math.max(y1, tile.rect[3]);
+			}
+			if (damageCount == MAX_DAMAGE_RECTS) {
+				full = true;
+			} else {
+				int offset = damageCount++ * 4;
+				mDamage[offset] = x0;
+				mDamage[offset + 1] = y0;
+				mDamage[offset + 2] = x1;
+				mDamage[offset + 3] = y1;
+			}
+		}
+		if (!full && damageCount == 0) {
+			// nothing changed, the preserved buffer is shown again as is
+			return;
+		}
+
+		int count = 0;
+		for (int i = 0; i < tiles.length; ++i) {
+			if (focus != i && tiles[i].atlasCell != -1 && isShown(tiles, i)) {
+				mDrawOrder[count++] = tiles[i];
+			}
+		}
+		for (int i = 0; i < tiles.length; ++i) {
+			if (focus != i && tiles[i].atlasCell == -1 && isShown(tiles, i)) {
+				mDrawOrder[count++] = tiles[i];
+			}
+		}
+		if (focus != -1 && focus < tiles.length && isShown(tiles, focus)) {
+			mDrawOrder[count++] = tiles[focus];
+		}
 
-		GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+		mBatch.begin(tiles.length);
+		for (int i = 0; i < count; ++i) {
+			Tile tile = mDrawOrder[i];
+			if (full) {
+				updateRect(tile);
+				tile.drawn = true;
+			}
+			mBatch.add(tile.vertices, tile.texCoords);
+		}
+		mBatch.upload(posLocation, tcLocation);
+
+		if (full) {
+			GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+			drawQuads(count, -1);
+		} else {
+			GLES20.glEnable(GLES20.GL_SCISSOR_TEST);
+			for (int d = 0; d < damageCount; ++d) {
+				int offset = d * 4;
+				GLES20.glScissor(mDamage[offset], mDamage[offset + 1],
+						mDamage[offset + 2] - mDamage[offset],
+						mDamage[offset + 3] - mDamage[offset + 1]);
+				GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+				drawQuads(count, offset);
+			}
+			GLES20.glDisable(GLES20.GL_SCISSOR_TEST);
+		}
+		int redrawn = 0;
+		for (int i = 0; i < count; ++i) {
+			if (mDrawOrder[i].redrawn) {
+				mDrawOrder[i].redrawn = false;
+				++redrawn;
+			}
+		}
+		Arrays.fill(mDrawOrder, 0, count, null);
+		++mFramesDrawn;
+		mTilesRedrawn += redrawn;
+		mTilesSkipped += count - redrawn;
 		checkNoGLES2Error();
 	}
 
+	// Draw the batched quads of the first |count| tiles of the draw order
+	// that overlap damage rectangle |damageOffset|, or all if it is -1.
+	// Consecutive quads sharing textures go out in one draw call. The tiles
+	// drawn are flagged as redrawn.
+	private void drawQuads(int count, int damageOffset) {
+		int first = -1;
+		int[] runTextures = null;
+		for (int i = 0; i <= count; ++i) {
+			boolean take = i < count
+					&& (damageOffset == -1 || overlaps(mDrawOrder[i],
+							damageOffset));
+			int[] textures = take ? texturesOf(mDrawOrder[i]) : null;
+			if (first != -1 && textures != runTextures) {
+				for (int t = 0; t < 3; ++t) {
+					GLES20.glActiveTexture(GLES20.GL_TEXTURE0 + t);
+					GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, runTextures[t]);
+				}
+				mBatch.draw(first, i - first);
+				for (int j = first; j < i; ++j) {
+					mDrawOrder[j].redrawn = true;
+				}
+				first = -1;
+			}
+			if (take && first == -1) {
+				first = i;
+				runTextures = textures;
+			}
+		}
+	}
+
+	// Check if |tile| overlaps the damage rectangle at |damageOffset|.
+	private boolean overlaps(Tile tile, int damageOffset) {
+		return tile.rect[0] < mDamage[damageOffset + 2]
+				&& tile.rect[2] > mDamage[damageOffset]
+				&& tile.rect[1] < mDamage[damageOffset + 3]
+				&& tile.rect[3] > mDamage[damageOffset + 1];
+	}
+
+	// Compute the window area of |tile| from its vertices, rounded outwards.
+	private void updateRect(Tile tile) {
+		FloatBuffer vertices = tile.vertices;
+		float w = .5f * mSurfaceWidth, h = .5f * mSurfaceHeight;
+		tile.rect[0] = (int) Math.floor((vertices.get(0) + 1) * w);
+		tile.rect[1] = (int) Math.floor((vertices.get(3) + 1) * h);
+		tile.rect[2] = (int) Math.ceil((vertices.get(4) + 1) * w);
+		tile.rect[3] = (int) Math.ceil((vertices.get(1) + 1) * h);
+	}
+
+	// Textures holding the newest frame of |tile|.
+	private int[] texturesOf(Tile tile) {
+		return tile.atlasCell != -1 ? mAtlas.getTextures()
+				: tile.yuvTextures[tile.drawnTextureSet];
+	}
+
 	// Compile & attach a |type| shader specified by |source| to |program|.
 	private static void addShaderTo(int type, String source, int program) {
 		int[] result = new int[] { GLES20.GL_FALSE };
@@ -505,8 +1186,19 @@ public class VideoStreamsView extends GLSurfaceView implements
 		}
 	}
 
-	// Assert that no OpenGL ES 2.0 error has been raised.
+	/**
+	 * check for gl errors after every gl operation - glGetError() waits for the
+	 * gl pipeline, so this is meant for debugging only
+	 */
+	public static void setGlDebugEnabled(boolean enabled) {
+		sGlDebug = enabled;
+	}
+
+	// Assert that no OpenGL ES 2.0 error has been raised, in gl debug mode.
 	private static void checkNoGLES2Error() {
+		if (!sGlDebug) {
+			return;
+		}
 		int error = GLES20.glGetError();
 		abortUnless(error == GLES20.GL_NO_ERROR, "GLES20 error: " + error);
 	}
@@ -516,12 +1208,53 @@ public class VideoStreamsView extends GLSurfaceView implements
 		mRed = Color.red(color) / 255.0f;
 		mGreen = Color.green(color) / 255.0f;
 		mBlue = Color.blue(color) / 255.0f;
+		mFullRedraw.set(true);
 		requestRender();
 	}
 
+	/**
+	 * picks an es2 config whose window surfaces can preserve the color buffer
+	 * across swaps, falling back to configs without that ability
+	 */
+	private static class PreservingConfigChooser implements EGLConfigChooser {
+		private static final int EGL_OPENGL_ES2_BIT = 4;
+		private static final int EGL_SWAP_BEHAVIOR_PRESERVED_BIT = 0x400;
+
+		@Override
+		public EGLConfig chooseConfig(EGL10 egl, EGLDisplay display) {
+			EGLConfig config = chooseConfig(egl, display, 8,
+					EGL10.EGL_WINDOW_BIT | EGL_SWAP_BEHAVIOR_PRESERVED_BIT);
+			if (config == null) {
+				config = chooseConfig(egl, display, 8, EGL10.EGL_WINDOW_BIT);
+			}
+			if (config == null) {
+				config = chooseConfig(egl, display, 0, EGL10.EGL_WINDOW_BIT);
+			}
+			if (config == null) {
+				throw new IllegalArgumentException("No EGL config found");
+			}
+			return config;
+		}
+
+		private static EGLConfig chooseConfig(EGL10 egl, EGLDisplay display,
+				int colorSize, int surfaceType) {
+			int[] attribs = { EGL10.EGL_RED_SIZE, colorSize,
+					EGL10.EGL_GREEN_SIZE, colorSize, EGL10.EGL_BLUE_SIZE,
+					colorSize, EGL10.EGL_RENDERABLE_TYPE, EGL_OPENGL_ES2_BIT,
+					EGL10.EGL_SURFACE_TYPE, surfaceType, EGL10.EGL_NONE };
+			EGLConfig[] configs = new EGLConfig[1];
+			int[] numConfigs = new int[1];
+			if (!egl.eglChooseConfig(display, attribs, configs, 1, numConfigs)
+					|| numConfigs[0] == 0) {
+				return null;
+			}
+			return configs[0];
+		}
+	}
+
 	// Texture Coordinates mapping the entire texture.
-	private static final FloatBuffer textureCoords = directNativeFloatBuffer(new float[] {
-			0, 0, 0, 1, 1, 0, 1, 1 });
+	private static final float[] FULL_TEXTURE_COORDS = { 0, 0, 0, 1, 1, 0, 1,
+			1 };
 
 	// Pass-through vertex shader.
 	private static final String VERTEX_SHADER_STRING = //
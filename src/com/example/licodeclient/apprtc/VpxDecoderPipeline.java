@@ -0,0 +1,314 @@
+package com.example.licodeclient.apprtc;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.webrtc.VideoRenderer.I420Frame;
+
+import android.util.Log;
+
+import com.google.libvpx.LibVpxDec;
+import com.google.libvpx.LibVpxException;
+
+/**
+ * Decodes VP8 streams on a pool of worker threads sized to the cpu cores and
+ * hands the frames to a VideoStreamsView. Packets of one stream are decoded in
+ * order by one worker at a time, different streams in parallel. Input packets
+ * are recycled and decoded frames are written straight into frames of the
+ * view's pool, so a steady stream allocates nothing but the frame the native
+ * decoder returns. Created by the view, see
+ * VideoStreamsView.getDecoderPipeline().
+ */
+public class VpxDecoderPipeline {
+	private static final String TAG = "VpxDecoderPipeline";
+	/** packets queued per stream before the backlog is dropped */
+	private static final int MAX_PENDING_PACKETS = 8;
+	/** luma pixels a single decoder thread is expected to keep up with */
+	private static final int PIXELS_PER_THREAD = 640 * 480;
+	/** thread setting picking the decoder threads from frame size and load */
+	public static final int ADAPTIVE_THREADS = 0;
+
+	/** a recycled buffer for one compressed frame */
+	private static class Packet {
+		byte[] data = new byte[0];
+		int length = 0;
+		boolean keyFrame = false;
+	}
+
+	/** decoding state of a single stream */
+	public class StreamDecoder implements Runnable {
+		private final String mStreamId;
+		/** packets waiting to be decoded */
+		private final ConcurrentLinkedQueue<Packet> mPending = new ConcurrentLinkedQueue<Packet>();
+		private final AtomicInteger mPendingCount = new AtomicInteger(0);
+		/** decoded packets, ready to be filled again */
+		private final ConcurrentLinkedQueue<Packet> mFreePackets = new ConcurrentLinkedQueue<Packet>();
+		/** a worker is draining mPending or about to */
+		private final AtomicBoolean mScheduled = new AtomicBoolean(false);
+		/** packets are dropped until the next key frame */
+		private volatile boolean mWaitForKeyFrame = true;
+		private volatile boolean mClosed = false;
+		/** requested decoder threads, or ADAPTIVE_THREADS */
+		private volatile int mThreads = ADAPTIVE_THREADS;
+		/** threads of the running decoder */
+		private volatile int mDecoderThreads = 0;
+		private volatile long mDroppedPackets = 0;
+
+		// Only touched by the worker currently running this stream.
+		private LibVpxDec mDecoder = null;
+		private int mHandle = VideoStreamsView.INVALID_HANDLE;
+		private final int[] mWidthHeight = new int[2];
+		private final int[] mResult = new int[1];
+		/** describes the size of decoded frames for the frame pool */
+		private I420Frame mTemplate = null;
+
+		private StreamDecoder(String streamId) {
+			mStreamId = streamId;
+		}
+
+		/**
+		 * queue a compressed frame for decoding, from one thread per stream;
+		 * returns false if it was dropped because the stream fell behind or
+		 * waits for a key frame
+		 */
+		public boolean decode(byte[] data, int offset, int length) {
+			if (mClosed) {
+				return false;
+			}
+			boolean keyFrame = isKeyFrame(data, offset, length);
+			if (!keyFrame
+					&& (mWaitForKeyFrame || mPendingCount.get() >= MAX_PENDING_PACKETS)) {
+				// later frames reference this one - skip to the next key frame
+				mWaitForKeyFrame = true;
+				++mDroppedPackets;
+				return false;
+			}
+			if (keyFrame) {
+				// nothing queued before a key frame is needed any more
+				Packet stale;
+				while ((stale = mPending.poll()) != null) {
+					mPendingCount.decrementAndGet();
+					mFreePackets.offer(stale);
+					++mDroppedPackets;
+				}
+				mWaitForKeyFrame = false;
+			}
+
+			Packet packet = mFreePackets.poll();
+			if (packet == null) {
+				packet = new Packet();
+			}
+			if (packet.data.length < length) {
+				packet.data = new byte[Math.max(length, 2 * packet.data.length)];
+			}
+			System.arraycopy(data, offset, packet.data, 0, length);
+			packet.length = length;
+			packet.keyFrame = keyFrame;
+			mPending.offer(packet);
+			mPendingCount.incrementAndGet();
+			schedule();
+			return true;
+		}
+
+		/**
+		 * set the number of decoder threads, or ADAPTIVE_THREADS to derive
+		 * them from frame size and the number of streams; applied with the
+		 * next key frame
+		 */
+		public void setThreads(int threads) {
+			mThreads = threads;
+		}
+
+		/** threads of the running decoder, 0 if none is running */
+		public int getThreads() {
+			return mDecoderThreads;
+		}
+
+		/** number of packets dropped to catch up or wait for a key frame */
+		public long getDroppedPackets() {
+			return mDroppedPackets;
+		}
+
+		/** drain the pending packets - runs on a worker */
+		@Override
+		public void run() {
+			Packet packet;
+			while (!mClosed && (packet = mPending.poll()) != null) {
+				mPendingCount.decrementAndGet();
+				decodePacket(packet);
+				mFreePackets.offer(packet);
+			}
+			boolean released = mClosed;
+			if (released) {
+				releaseDecoder();
+				mPending.clear();
+				mFreePackets.clear();
+			}
+			mScheduled.set(false);
+			// a packet may have arrived after the last poll, or the stream
+			// been closed after the check above
+			if (mClosed ? !released : !mPending.isEmpty()) {
+				schedule();
+			}
+		}
+
+		/** stop decoding, the decoder is released by the worker */
+		private void close() {
+			mClosed = true;
+			schedule();
+		}
+
+		private void schedule() {
+			if (mScheduled.compareAndSet(false, true)) {
+				try {
+					mWorkers.execute(this);
+				} catch (RejectedExecutionException e) {
+					// the pipeline was shut down meanwhile - nothing is decoded
+					// any more, the decoder is released right here
+					mClosed = true;
+					run();
+				}
+			}
+		}
+
+		private void decodePacket(Packet packet) {
+			if (packet.keyFrame && mDecoder != null
+					&& desiredThreads() != mDecoderThreads) {
+				// the thread count is fixed at init, a key frame allows a
+				// fresh decoder without artifacts
+				releaseDecoder();
+			}
+			if (mDecoder == null) {
+				if (!packet.keyFrame) {
+					return;
+				}
+				int threads = desiredThreads();
+				try {
+					mDecoder = new LibVpxDec(0, 0, threads, false, false);
+				} catch (LibVpxException e) {
+					Log.w(TAG, "Decoder for " + mStreamId + " failed: " + e);
+					return;
+				}
+				mDecoderThreads = threads;
+			}
+
+			byte[] i420;
+			try {
+				i420 = mDecoder.decodeFrameToBuffer(packet.data, packet.length,
+						mWidthHeight, mResult);
+			} catch (LibVpxException e) {
+				Log.w(TAG, "Decoding " + mStreamId + " failed: " + e);
+				releaseDecoder();
+				mWaitForKeyFrame = true;
+				return;
+			}
+			if (i420 != null) {
+				deliver(i420, mWidthHeight[0], mWidthHeight[1]);
+			}
+		}
+
+		/**
+		 * copy a decoded frame into a frame of the view and hand it over - the
+		 * only copy, the view takes the frame as is
+		 */
+		private void deliver(byte[] i420, int width, int height) {
+			int chromaWidth = (width + 1) / 2;
+			if (mTemplate == null || mTemplate.width != width
+					|| mTemplate.height != height) {
+				mTemplate = new I420Frame(width, height, new int[] { width,
+						chromaWidth, chromaWidth }, new ByteBuffer[3]);
+			}
+			if (!mView.isStreamHandleValid(mHandle)) {
+				mHandle = mView.getStreamHandle(mStreamId);
+			}
+			I420Frame frame = mView.takeFrame(mHandle, mTemplate);
+			if (frame == null) {
+				// hidden, or the previous frame is not uploaded yet
+				return;
+			}
+			int offset = 0;
+			for (int i = 0; i < 3; ++i) {
+				int size = frame.yuvStrides[i]
+						* (i == 0 ? height : (height + 1) / 2);
+				ByteBuffer plane = frame.yuvPlanes[i];
+				plane.clear();
+				plane.put(i420, offset, size);
+				plane.position(0);
+				offset += size;
+			}
+			mView.queueFilledFrame(mHandle, frame);
+		}
+
+		/** decoder threads for the current frame size and stream count */
+		private int desiredThreads() {
+			int threads = mThreads;
+			if (threads != ADAPTIVE_THREADS) {
+				return threads;
+			}
+			int pixels = mWidthHeight[0] * mWidthHeight[1];
+			int needed = (pixels + PIXELS_PER_THREAD - 1) / PIXELS_PER_THREAD;
+			int share = Math.max(1, mCores / Math.max(1, mStreams.size()));
+			return Math.max(1, Math.min(needed, share));
+		}
+
+		private void releaseDecoder() {
+			if (mDecoder != null) {
+				mDecoder.close();
+				mDecoder = null;
+				mDecoderThreads = 0;
+			}
+		}
+	}
+
+	private final VideoStreamsView mView;
+	private final int mCores;
+	/** runs the decoders, at most one task per stream is queued */
+	private final ExecutorService mWorkers;
+	private final ConcurrentHashMap<String, StreamDecoder> mStreams = new ConcurrentHashMap<String, StreamDecoder>();
+
+	VpxDecoderPipeline(VideoStreamsView view) {
+		mView = view;
+		mCores = Math.max(1, Runtime.getRuntime().availableProcessors());
+		mWorkers = Executors.newFixedThreadPool(mCores);
+	}
+
+	/** get the decoder of a stream, creating it if needed */
+	public StreamDecoder addStream(String streamId) {
+		StreamDecoder decoder = mStreams.get(streamId);
+		if (decoder == null) {
+			decoder = new StreamDecoder(streamId);
+			StreamDecoder existing = mStreams.putIfAbsent(streamId, decoder);
+			if (existing != null) {
+				decoder = existing;
+			}
+		}
+		return decoder;
+	}
+
+	/** stop decoding a stream and release its decoder */
+	public void removeStream(String streamId) {
+		StreamDecoder decoder = mStreams.remove(streamId);
+		if (decoder != null) {
+			decoder.close();
+		}
+	}
+
+	/** release all decoders and stop the workers */
+	public void shutdown() {
+		for (String streamId : mStreams.keySet()) {
+			removeStream(streamId);
+		}
+		mWorkers.shutdown();
+	}
+
+	/** VP8 frame tag - bit 0 of the first byte is clear for key frames */
+	private static boolean isKeyFrame(byte[] data, int offset, int length) {
+		return length >= 10 && (data[offset] & 0x01) == 0;
+	}
+}
@@ -0,0 +1,204 @@
+package com.example.licodeclient.apprtc;
+
+import com.google.libvpx.LibVpxEnc;
+import com.google.libvpx.LibVpxEncConfig;
+import com.google.libvpx.LibVpxException;
+
+/**
+ * Adapts a running LibVpxEnc to network and cpu once a second. The target
+ * bitrate follows the bandwidth estimate, capped at the video limit the
+ * connector writes into the sdp as b=AS; frame size and frame dropping follow
+ * the target bitrate; cpu-used follows the encode time. Changing the encoder
+ * configuration costs a key frame (see LibVpxEnc.reconfigure()), so those
+ * changes are held back by hysteresis, while cpu-used is applied right away.
+ * All methods but setMaxBitrate() and onBandwidthEstimate() must be called
+ * from the encoding thread.
+ */
+public class VpxRateController {
+	/** informs the capturer about frame size changes */
+	public interface Listener {
+		/** frames have to be fed in the new size from now on */
+		void onFrameSizeChanged(int width, int height);
+	}
+
+	/** interval between two adjustments */
+	private static final long INTERVAL_NANOS = 1000000000L;
+	/**
+	 * minimum interval between two reconfigurations, unless the bitrate drops
+	 * sharply or exceeds the limit
+	 */
+	private static final long MIN_RECONFIGURE_NANOS = 5000000000L;
+	/** share of the estimated bandwidth used for video */
+	private static final float BANDWIDTH_HEADROOM = 0.9f;
+	/**
+	 * relative bitrate change below which the encoder is left alone, unless it
+	 * exceeds the limit
+	 */
+	private static final float BITRATE_HYSTERESIS = 0.15f;
+	/** largest bitrate increase per reconfiguration */
+	private static final float MAX_INCREASE = 1.25f;
+	/** a target below this share of the current bitrate is applied at once */
+	private static final float SHARP_DROP = 0.7f;
+	/** bits per full size pixel below which frames are halved, above which restored */
+	private static final float MIN_BITS_PER_PIXEL = 0.05f,
+			MAX_BITS_PER_PIXEL = 0.15f;
+	/** frame drop threshold while the target is below half the limit */
+	private static final int DROP_FRAME_THRESH_CONGESTED = 30;
+	/** share of the frame interval spent encoding that makes cpu-used go up / down */
+	private static final float CPU_BUSY = 0.8f, CPU_IDLE = 0.4f;
+	/** range of cpu-used values used for realtime encoding */
+	private static final int MIN_CPU_USED = 4, MAX_CPU_USED = 16;
+
+	private final LibVpxEnc mEncoder;
+	private final LibVpxEncConfig mConfig;
+	private final int mFullWidth, mFullHeight;
+	private final long mFrameIntervalNanos;
+	private Listener mListener = null;
+
+	/** b=AS video limit in kbps, 0 for none */
+	private volatile int mMaxBitrateKbps = 0;
+	/** latest bandwidth estimate in kbps, 0 while unknown */
+	private volatile int mEstimateKbps = 0;
+
+	private int mBitrateKbps;
+	private int mCpuUsed;
+	private boolean mScaled = false;
+	private long mEncodeNanos = 0L;
+	private int mEncodedFrames = 0;
+	private long mLastTickNanos = 0L;
+	private long mLastReconfigureNanos = 0L;
+
+	/**
+	 * @param encoder
+	 *            encoder created with |config|
+	 * @param config
+	 *            configuration of the encoder, changed and reapplied on
+	 *            adjustments
+	 * @param fps
+	 *            frame rate frames are fed with
+	 * @param cpuUsed
+	 *            cpu-used value the encoder starts with
+	 */
+	public VpxRateController(LibVpxEnc encoder, LibVpxEncConfig config,
+			float fps, int cpuUsed) {
+		mEncoder = encoder;
+		mConfig = config;
+		mFullWidth = config.getWidth();
+		mFullHeight = config.getHeight();
+		mFrameIntervalNanos = (long) (1e9 / fps);
+		mBitrateKbps = config.getRCTargetBitrate();
+		mCpuUsed = cpuUsed;
+	}
+
+	public void setListener(Listener listener) {
+		mListener = listener;
+	}
+
+	/** set the video bitrate limit, e.g. as given to setBandwidthLimits() */
+	public void setMaxBitrate(int kbps) {
+		mMaxBitrateKbps = kbps;
+	}
+
+	/** feed a new estimate of the available send bandwidth */
+	public void onBandwidthEstimate(int kbps) {
+		mEstimateKbps = kbps;
+	}
+
+	/** feed the time it took to encode a frame */
+	public void onFrameEncoded(long encodeNanos) {
+		mEncodeNanos += encodeNanos;
+		++mEncodedFrames;
+	}
+
+	/** current target bitrate in kbps */
+	public int getBitrate() {
+		return mBitrateKbps;
+	}
+
+	/** adjust the encoder if the last adjustment is a second ago */
+	public void tick(long now) throws LibVpxException {
+		if (mLastTickNanos == 0L) {
+			mLastTickNanos = now;
+			return;
+		}
+		if (now - mLastTickNanos < INTERVAL_NANOS) {
+			return;
+		}
+		mLastTickNanos = now;
+		adjustCpuUsed();
+		adjustBitrate(now);
+	}
+
+	private void adjustCpuUsed() throws LibVpxException {
+		if (mEncodedFrames == 0) {
+			return;
+		}
+		float busy = mEncodeNanos / (float) mEncodedFrames
+				/ mFrameIntervalNanos;
+		mEncodeNanos = 0L;
+		mEncodedFrames = 0;
+		int cpuUsed = mCpuUsed;
+		if (busy > CPU_BUSY) {
+			cpuUsed = Math.min(MAX_CPU_USED, cpuUsed + 2);
+		} else if (busy < CPU_IDLE) {
+			cpuUsed = Math.max(MIN_CPU_USED, cpuUsed - 1);
+		}
+		if (cpuUsed != mCpuUsed) {
+			mEncoder.setCpuUsed(cpuUsed);
+			mCpuUsed = cpuUsed;
+		}
+	}
+
+	private void adjustBitrate(long now) throws LibVpxException {
+		int max = mMaxBitrateKbps;
+		int estimate = mEstimateKbps;
+		int target = estimate > 0 ? (int) (estimate * BANDWIDTH_HEADROOM)
+				: mBitrateKbps;
+		if (max > 0) {
+			target = Math.min(target, max);
+		}
+		if (mBitrateKbps > 0) {
+			target = Math.min(target, (int) (mBitrateKbps * MAX_INCREASE) + 1);
+		}
+		if (target <= 0) {
+			return;
+		}
+		// above the b=AS limit the encoder overshoots what the remote side
+		// accepts - cut it down at once, however small the step
+		boolean overLimit = max > 0 && mBitrateKbps > max;
+		if (!overLimit
+				&& Math.abs(target - mBitrateKbps) <= mBitrateKbps
+						* BITRATE_HYSTERESIS) {
+			return;
+		}
+		boolean sharpDrop = target < mBitrateKbps * SHARP_DROP;
+		if (!overLimit && !sharpDrop
+				&& now - mLastReconfigureNanos < MIN_RECONFIGURE_NANOS) {
+			return;
+		}
+
+		float bitsPerPixel = target * 1000f
+				/ (mFullWidth * mFullHeight * (1e9f / mFrameIntervalNanos));
+		boolean scaled = mScaled ? bitsPerPixel < MAX_BITS_PER_PIXEL
+				: bitsPerPixel < MIN_BITS_PER_PIXEL;
+		boolean congested = max > 0 ? target < max / 2 : sharpDrop;
+
+		mConfig.setRCTargetBitrate(target);
+		mConfig.setRCDropframeThresh(congested ? DROP_FRAME_THRESH_CONGESTED
+				: 0);
+		int width = scaled ? (mFullWidth / 2) & ~1 : mFullWidth;
+		int height = scaled ? (mFullHeight / 2) & ~1 : mFullHeight;
+		mConfig.setWidth(width);
+		mConfig.setHeight(height);
+		mEncoder.reconfigure(mConfig);
+
+		mBitrateKbps = target;
+		mLastReconfigureNanos = now;
+		if (scaled != mScaled) {
+			mScaled = scaled;
+			if (mListener != null) {
+				mListener.onFrameSizeChanged(width, height);
+			}
+		}
+	}
+}
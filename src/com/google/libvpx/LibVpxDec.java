@@ -58,7 +58,13 @@ public class LibVpxDec extends LibVpxCom {
   }
 
   public byte[] decodeFrameToBuffer(byte[] rawFrame, int[] widthHeight, int[] result) throws LibVpxException {
-    result[0] = vpxCodecDecDecode(vpxCodecIface, rawFrame, rawFrame.length);
+    return decodeFrameToBuffer(rawFrame, rawFrame.length, widthHeight, result);
+  }
+
+  // Decode the first |size| bytes of |rawFrame|, so a single input buffer can
+  // be reused for packets of any size.
+  public byte[] decodeFrameToBuffer(byte[] rawFrame, int size, int[] widthHeight, int[] result) throws LibVpxException {
+    result[0] = vpxCodecDecDecode(vpxCodecIface, rawFrame, size);
     if (result[0] == 5) {
       return null;
     }
@@ -69,6 +75,19 @@ public class LibVpxDec extends LibVpxCom {
     return vpxCodecDecGetFrame(vpxCodecIface, widthHeight);
   }
 
+  // Number of threads the decoder was configured with, 0 for the default.
+  public int getThreads() {
+    return vpxCodecDecGetThreads(decCfgObj);
+  }
+
+  public int getWidth() {
+    return vpxCodecDecGetWidth(decCfgObj);
+  }
+
+  public int getHeight() {
+    return vpxCodecDecGetHeight(decCfgObj);
+  }
+
   public void close() {
     vpxCodecDestroy(vpxCodecIface);
     vpxCodecDecFreeCfg(decCfgObj);
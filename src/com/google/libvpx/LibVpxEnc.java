@@ -2,6 +2,8 @@
 // Author: frkoenig@google.com (Fritz Koenig)
 package com.google.libvpx;
 
+import java.nio.ByteBuffer;
+
 /**
  * libvpx JNI wrapper for encoding functions.
  */
@@ -27,6 +29,42 @@ public class LibVpxEnc extends LibVpxCom {
   // Enums from libvpx.
   public static final int VPX_IMG_FMT_YV12 = 0x301;
   public static final int VPX_IMG_FMT_I420 = 0x102;
+  public static final long VPX_EFLAG_FORCE_KF = 0x1;
+
+  // Per-frame flags from vp8cx.h.
+  public static final long VP8_EFLAG_NO_REF_LAST = 1 << 16;
+  public static final long VP8_EFLAG_NO_REF_GF = 1 << 17;
+  public static final long VP8_EFLAG_NO_UPD_LAST = 1 << 18;
+  public static final long VP8_EFLAG_FORCE_GF = 1 << 19;
+  public static final long VP8_EFLAG_NO_UPD_ENTROPY = 1 << 20;
+  public static final long VP8_EFLAG_NO_REF_ARF = 1 << 21;
+  public static final long VP8_EFLAG_NO_UPD_GF = 1 << 22;
+  public static final long VP8_EFLAG_NO_UPD_ARF = 1 << 23;
+  public static final long VP8_EFLAG_FORCE_ARF = 1 << 24;
+
+  // Temporal layer patterns: layer id and reference flags per frame.
+  // Base layer frames only reference and update the last frame. The middle
+  // layer of three keeps the golden frame, which only the top layer may
+  // reference besides the last frame. Upper layers do not update the
+  // entropy context, so the base layer decodes without them.
+  private static final int[] LAYER_IDS_2 = {0, 1};
+  private static final long[] LAYER_FLAGS_2 = {
+      VP8_EFLAG_NO_REF_GF | VP8_EFLAG_NO_REF_ARF | VP8_EFLAG_NO_UPD_GF
+          | VP8_EFLAG_NO_UPD_ARF,
+      VP8_EFLAG_NO_REF_GF | VP8_EFLAG_NO_REF_ARF | VP8_EFLAG_NO_UPD_LAST
+          | VP8_EFLAG_NO_UPD_GF | VP8_EFLAG_NO_UPD_ARF | VP8_EFLAG_NO_UPD_ENTROPY,
+  };
+  private static final int[] LAYER_IDS_3 = {0, 2, 1, 2};
+  private static final long[] LAYER_FLAGS_3 = {
+      VP8_EFLAG_NO_REF_GF | VP8_EFLAG_NO_REF_ARF | VP8_EFLAG_NO_UPD_GF
+          | VP8_EFLAG_NO_UPD_ARF,
+      VP8_EFLAG_NO_REF_ARF | VP8_EFLAG_NO_UPD_LAST | VP8_EFLAG_NO_UPD_GF
+          | VP8_EFLAG_NO_UPD_ARF | VP8_EFLAG_NO_UPD_ENTROPY,
+      VP8_EFLAG_NO_REF_ARF | VP8_EFLAG_NO_UPD_LAST | VP8_EFLAG_NO_UPD_ARF
+          | VP8_EFLAG_NO_UPD_ENTROPY,
+      VP8_EFLAG_NO_REF_ARF | VP8_EFLAG_NO_UPD_LAST | VP8_EFLAG_NO_UPD_GF
+          | VP8_EFLAG_NO_UPD_ARF | VP8_EFLAG_NO_UPD_ENTROPY,
+  };
 
   private native void vpxCodecEncInit(long encoder, long cfg);
 
@@ -58,6 +96,47 @@ public class LibVpxEnc extends LibVpxCom {
 
   private native byte[] vpxCodecEncGetCxData(long ctx);
 
+  // Temporal layer pattern of the current configuration, null without layers.
+  private int[] layerIds = null;
+  private long[] layerFlags = null;
+  // Position in the layer pattern of the next frame.
+  private int patternIndex = 0;
+  // Layer of the frame encoded last.
+  private int currentLayerId = 0;
+
+  // False while the codec context is destroyed, i.e. a reconfigure() failed.
+  private boolean codecInitialized = true;
+
+  // Raw frame staging for the ByteBuffer entry points, reused between frames.
+  private byte[] scratch = new byte[0];
+
+  // Controls set through the setters, applied again by reconfigure().
+  private static final int CTRL_CPU_USED = 0;
+  private static final int CTRL_ENABLE_AUTO_ALT_REF = 1;
+  private static final int CTRL_NOISE_SENSITIVITY = 2;
+  private static final int CTRL_SHARPNESS = 3;
+  private static final int CTRL_STATIC_THRESHOLD = 4;
+  private static final int CTRL_TOKEN_PARTITIONS = 5;
+  private static final int CTRL_ARNR_MAX_FRAMES = 6;
+  private static final int CTRL_ARNR_STRENGTH = 7;
+  private static final int CTRL_ARNR_TYPE = 8;
+  private static final int CTRL_TUNING = 9;
+  private static final int CTRL_CQ_LEVEL = 10;
+  private static final int CTRL_MAX_INTRA_BITRATE_PCT = 11;
+  private static final int CTRL_COUNT = 12;
+  private final int[] controlValues = new int[CTRL_COUNT];
+  private final boolean[] controlSet = new boolean[CTRL_COUNT];
+
+  // Largest VP8 token partition count, see setTokenPartitions().
+  public static final int MAX_TOKEN_PARTITIONS = 8;
+
+  // Token partitions the encoder writes per frame.
+  private int tokenPartitions = 1;
+  // Whether frames are handed out as one packet per partition.
+  private boolean outputPartitions = false;
+  // Packet boundaries within the last compressed frame.
+  private final int[] partitionStarts = new int[MAX_TOKEN_PARTITIONS + 2];
+
   public LibVpxEnc(LibVpxEncConfig cfg) throws LibVpxException {
     vpxCodecIface = vpxCodecAllocCodec();
     if (vpxCodecIface == 0) {
@@ -70,12 +149,59 @@ public class LibVpxEnc extends LibVpxCom {
       vpxCodecFreeCodec(vpxCodecIface);
       throw new LibVpxException(errorMsg);
     }
+    setLayerPattern(cfg);
+  }
+
+  private void setLayerPattern(LibVpxEncConfig cfg) {
+    switch (cfg.getTemporalLayers()) {
+      case 2:
+        layerIds = LAYER_IDS_2;
+        layerFlags = LAYER_FLAGS_2;
+        break;
+      case 3:
+        layerIds = LAYER_IDS_3;
+        layerFlags = LAYER_FLAGS_3;
+        break;
+      default:
+        layerIds = null;
+        layerFlags = null;
+        break;
+    }
+    patternIndex = 0;
+    currentLayerId = 0;
+  }
+
+  // Add the reference flags of the next frame in the layer pattern to
+  // |flags| and remember its layer. Key frames restart the pattern.
+  private long nextLayerFlags(long flags) {
+    if (layerIds == null) {
+      return flags;
+    }
+    if ((flags & VPX_EFLAG_FORCE_KF) != 0) {
+      patternIndex = 0;
+    }
+    currentLayerId = layerIds[patternIndex];
+    flags |= layerFlags[patternIndex];
+    patternIndex = (patternIndex + 1) % layerIds.length;
+    return flags;
+  }
+
+  // Temporal layer of the frame encoded last.
+  public int getLayerId() {
+    return currentLayerId;
   }
 
   public boolean isError() {
     return vpxCodecIsError(vpxCodecIface);
   }
 
+  // A failed reconfigure() leaves no codec context to encode with.
+  private void checkInitialized() throws LibVpxException {
+    if (!codecInitialized) {
+      throw new LibVpxException("Encoder not initialized, reconfigure() failed");
+    }
+  }
+
   private void throwOnError() throws LibVpxException {
     if (vpxCodecIsError(vpxCodecIface)) {
       throw new LibVpxException(vpxCodecErrorDetail(vpxCodecIface));
@@ -85,41 +211,324 @@ public class LibVpxEnc extends LibVpxCom {
   public byte[] encodeFrame(
       byte[] frame, int fmt, long frameStart, long frameDuration, long flags, long deadline)
       throws LibVpxException {
-    if (!vpxCodecEncode(vpxCodecIface, frame, fmt, frameStart, frameDuration, flags, deadline)) {
+    checkInitialized();
+    if (!vpxCodecEncode(vpxCodecIface, frame, fmt, frameStart, frameDuration, nextLayerFlags(flags), deadline)) {
       throw new LibVpxException("Unable to encode frame");
     }
     throwOnError();
-    return vpxCodecEncGetCxData(vpxCodecIface);
+    return restartPatternOnKeyFrame(vpxCodecEncGetCxData(vpxCodecIface));
   }
 
   public byte[] convertByteEncodeFrame(
       byte[] frame, long frameStart, long frameDuration, long flags, long deadline, long fourcc, int rotation)
       throws LibVpxException {
+    checkInitialized();
     if (!vpxCodecConvertByteEncode(vpxCodecIface,
-        frame, frameStart, frameDuration, flags, deadline, fourcc, frame.length, rotation)) {
+        frame, frameStart, frameDuration, nextLayerFlags(flags), deadline, fourcc, frame.length, rotation)) {
       throw new LibVpxException("Unable to convert and encode frame");
     }
     throwOnError();
-    return vpxCodecEncGetCxData(vpxCodecIface);
+    return restartPatternOnKeyFrame(vpxCodecEncGetCxData(vpxCodecIface));
   }
 
   public byte[] convertIntEncodeFrame(
       int[] frame, long frameStart, long frameDuration, long flags, long deadline, long fourcc, int rotation)
       throws LibVpxException {
+    checkInitialized();
     if (!vpxCodecConvertIntEncode(vpxCodecIface,
-        frame, frameStart, frameDuration, flags, deadline, fourcc, frame.length, rotation)) {
+        frame, frameStart, frameDuration, nextLayerFlags(flags), deadline, fourcc, frame.length, rotation)) {
       throw new LibVpxException("Unable to convert and encode frame");
     }
     throwOnError();
-    return vpxCodecEncGetCxData(vpxCodecIface);
+    return restartPatternOnKeyFrame(vpxCodecEncGetCxData(vpxCodecIface));
+  }
+
+  // Encode an I420 frame given as (direct) ByteBuffer planes and write the
+  // compressed data into the next slot of |ring|. Returns that slot, or null
+  // if the encoder produced no data for this frame. This is not allocation
+  // free: the JNI glue still returns the compressed data as a new byte[], so
+  // one native allocation and one extra copy, into the ring slot, remain per
+  // frame. The planes are copied row by row into a scratch array that is
+  // kept, like the caller of encodeFrame(byte[]) has to copy them.
+  public VpxCodecCxPkt encodeFrame(
+      ByteBuffer[] planes, int[] strides, int width, int height, long frameStart,
+      long frameDuration, long flags, long deadline, VpxCodecCxPktRing ring)
+      throws LibVpxException {
+    encodePlanes(planes, strides, width, height, frameStart, frameDuration, flags, deadline);
+    return fillPacket(ring, frameStart, frameDuration);
+  }
+
+  // Encode like encodeFrame() above, but hand out every packet of the frame:
+  // with setOutputPartitions(true) the first partition and each token
+  // partition become a packet of their own, so the first partition can be
+  // packetized and sent before the rest. The packets are stored in
+  // |packets|, which needs room for MAX_TOKEN_PARTITIONS + 1 entries, and
+  // their number is returned. |ring| must hold at least as many slots.
+  public int encodeFrame(
+      ByteBuffer[] planes, int[] strides, int width, int height, long frameStart,
+      long frameDuration, long flags, long deadline, VpxCodecCxPktRing ring,
+      VpxCodecCxPkt[] packets) throws LibVpxException {
+    encodePlanes(planes, strides, width, height, frameStart, frameDuration, flags, deadline);
+    return fillPackets(ring, frameStart, frameDuration, packets);
+  }
+
+  private void encodePlanes(
+      ByteBuffer[] planes, int[] strides, int width, int height, long frameStart,
+      long frameDuration, long flags, long deadline) throws LibVpxException {
+    int chromaWidth = (width + 1) / 2;
+    int chromaHeight = (height + 1) / 2;
+    int size = width * height + 2 * chromaWidth * chromaHeight;
+    ensureScratch(size);
+    int offset = copyPlane(planes[0], strides[0], width, height, 0);
+    offset = copyPlane(planes[1], strides[1], chromaWidth, chromaHeight, offset);
+    copyPlane(planes[2], strides[2], chromaWidth, chromaHeight, offset);
+
+    checkInitialized();
+
+    if (!vpxCodecEncode(vpxCodecIface, scratch, VPX_IMG_FMT_I420, frameStart,
+        frameDuration, nextLayerFlags(flags), deadline)) {
+      throw new LibVpxException("Unable to encode frame");
+    }
+    throwOnError();
+  }
+
+  // Convert |size| bytes of |frame| from |fourcc| and encode them into the
+  // next slot of |ring|, like encodeFrame() above.
+  public VpxCodecCxPkt convertByteEncodeFrame(
+      ByteBuffer frame, int size, long frameStart, long frameDuration, long flags,
+      long deadline, long fourcc, int rotation, VpxCodecCxPktRing ring)
+      throws LibVpxException {
+    ensureScratch(size);
+    int position = frame.position();
+    frame.get(scratch, 0, size);
+    frame.position(position);
+
+    checkInitialized();
+
+    if (!vpxCodecConvertByteEncode(vpxCodecIface,
+        scratch, frameStart, frameDuration, nextLayerFlags(flags), deadline, fourcc, size,
+        rotation)) {
+      throw new LibVpxException("Unable to convert and encode frame");
+    }
+    throwOnError();
+    return fillPacket(ring, frameStart, frameDuration);
+  }
+
+  private void ensureScratch(int size) {
+    if (scratch.length < size) {
+      scratch = new byte[size];
+    }
+  }
+
+  // Copy |height| rows of |width| bytes from |plane| into the scratch buffer
+  // at |offset|, leaving the plane's position untouched.
+  private int copyPlane(ByteBuffer plane, int stride, int width, int height, int offset) {
+    int position = plane.position();
+    for (int row = 0; row < height; ++row) {
+      plane.position(position + row * stride);
+      plane.get(scratch, offset, width);
+      offset += width;
+    }
+    plane.position(position);
+    return offset;
+  }
+
+  private VpxCodecCxPkt fillPacket(VpxCodecCxPktRing ring, long frameStart, long frameDuration) {
+    // The JNI glue still hands the compressed data out as a new array.
+    byte[] data = vpxCodecEncGetCxData(vpxCodecIface);
+    if (data == null || data.length == 0) {
+      return null;
+    }
+    restartPatternOnKeyFrame(data);
+    return copyPacket(data, 0, data.length, ring, frameStart, frameDuration, 0, 0);
+  }
+
+  private int fillPackets(VpxCodecCxPktRing ring, long frameStart, long frameDuration,
+                          VpxCodecCxPkt[] packets) throws LibVpxException {
+    byte[] data = vpxCodecEncGetCxData(vpxCodecIface);
+    if (data == null || data.length == 0) {
+      return 0;
+    }
+    restartPatternOnKeyFrame(data);
+    int count = outputPartitions ? splitPartitions(data) : 0;
+    if (count == 0) {
+      // Whole frame as a single packet.
+      partitionStarts[0] = 0;
+      partitionStarts[1] = data.length;
+      count = 1;
+    }
+    int fragment = count > 1 ? VpxCodecCxPkt.VPX_FRAME_IS_FRAGMENT : 0;
+    for (int i = 0; i < count; ++i) {
+      packets[i] = copyPacket(data, partitionStarts[i],
+          partitionStarts[i + 1] - partitionStarts[i], ring, frameStart,
+          frameDuration, i, fragment);
+    }
+    return count;
+  }
+
+  private VpxCodecCxPkt copyPacket(byte[] data, int offset, int size, VpxCodecCxPktRing ring,
+                                   long frameStart, long frameDuration, int partitionId,
+                                   int flags) {
+    VpxCodecCxPkt pkt = ring.nextSlot(size);
+    System.arraycopy(data, offset, pkt.buffer, 0, size);
+    pkt.pts = frameStart;
+    pkt.duration = frameDuration;
+    // VP8 frame tag: bit 0 of the first byte is clear for key frames.
+    if ((data[0] & 0x01) == 0) {
+      flags |= VpxCodecCxPkt.VPX_FRAME_IS_KEY;
+    }
+    pkt.flags = flags;
+    pkt.partitionId = partitionId;
+    pkt.layerId = currentLayerId;
+    return pkt;
+  }
+
+  // Find the packet boundaries of a VP8 frame in partitionStarts: the first
+  // partition (frame header, modes and motion vectors, partition size table)
+  // followed by the token partitions. Returns the number of packets, or 0 if
+  // the frame does not parse with the configured token partition count.
+  // Throws for an invisible frame: an alt-ref frame comes out concatenated
+  // with the next visible frame, and as the last token partition carries no
+  // size, there is no telling where one frame ends and the other starts.
+  private int splitPartitions(byte[] data) throws LibVpxException {
+    if (data.length < 3) {
+      return 0;
+    }
+    // VP8 frame tag: bit 4 of the first byte is the show_frame flag.
+    if ((data[0] & 0x10) == 0) {
+      throw new LibVpxException(
+          "Invisible (alt-ref) frame cannot be split into partitions");
+    }
+    boolean keyFrame = (data[0] & 0x01) == 0;
+    int firstPartitionSize = readLittleEndian24(data, 0) >>> 5;
+    // 3 byte frame tag, key frames add start code and dimensions.
+    int sizeTable = (keyFrame ? 10 : 3) + firstPartitionSize;
+    int offset = sizeTable + 3 * (tokenPartitions - 1);
+    if (offset > data.length) {
+      return 0;
+    }
+    partitionStarts[0] = 0;
+    for (int i = 0; i < tokenPartitions - 1; ++i) {
+      partitionStarts[i + 1] = offset;
+      offset += readLittleEndian24(data, sizeTable + 3 * i);
+      if (offset > data.length) {
+        return 0;
+      }
+    }
+    // The last token partition has no size entry, it takes the rest.
+    partitionStarts[tokenPartitions] = offset;
+    partitionStarts[tokenPartitions + 1] = data.length;
+    return tokenPartitions + 1;
+  }
+
+  // A key frame resets all references; the layer pattern starts over after
+  // it, whether forced or inserted by the encoder. Returns |data|.
+  private byte[] restartPatternOnKeyFrame(byte[] data) {
+    if (layerIds != null && data != null && data.length > 0 && (data[0] & 0x01) == 0) {
+      currentLayerId = 0;
+      patternIndex = 1 % layerIds.length;
+    }
+    return data;
+  }
+
+  private static int readLittleEndian24(byte[] data, int offset) {
+    return (data[offset] & 0xff) | ((data[offset + 1] & 0xff) << 8)
+        | ((data[offset + 2] & 0xff) << 16);
+  }
+
+  // Hand out each partition of a frame as its own packet, see encodeFrame().
+  // Not possible together with auto alt-ref, see splitPartitions().
+  public void setOutputPartitions(boolean enabled) {
+    if (enabled && autoAltRefEnabled()) {
+      throw new IllegalStateException("Partitions cannot be output with auto alt-ref");
+    }
+    outputPartitions = enabled;
+  }
+
+  private boolean autoAltRefEnabled() {
+    return controlSet[CTRL_ENABLE_AUTO_ALT_REF] && controlValues[CTRL_ENABLE_AUTO_ALT_REF] != 0;
   }
 
   public static boolean haveLibyuv() {
     return vpxCodecHaveLibyuv();
   }
 
+  // Apply the settings of |cfg| - bitrate, frame size, drop threshold and
+  // the other rate control values - to the running encoder. The JNI glue
+  // cannot update the configuration of a live encoder, so it is initialized
+  // again: the next frame is a key frame, and the controls set through the
+  // setters are applied again. If |cfg| is rejected the encoder is left
+  // without a codec context: it cannot encode until a reconfigure() succeeds,
+  // close() is still safe.
+  public void reconfigure(LibVpxEncConfig cfg) throws LibVpxException {
+    if (codecInitialized) {
+      vpxCodecDestroy(vpxCodecIface);
+      codecInitialized = false;
+    }
+    vpxCodecEncInit(vpxCodecIface, cfg.handle());
+    if (isError()) {
+      throw new LibVpxException(vpxCodecErrorDetail(vpxCodecIface));
+    }
+    codecInitialized = true;
+    setLayerPattern(cfg);
+    for (int ctrl = 0; ctrl < CTRL_COUNT; ++ctrl) {
+      if (controlSet[ctrl]) {
+        applyControl(ctrl, controlValues[ctrl]);
+      }
+    }
+  }
+
+  private void remember(int ctrl, int value) {
+    controlValues[ctrl] = value;
+    controlSet[ctrl] = true;
+  }
+
+  private void applyControl(int ctrl, int value) throws LibVpxException {
+    switch (ctrl) {
+      case CTRL_CPU_USED:
+        setCpuUsed(value);
+        break;
+      case CTRL_ENABLE_AUTO_ALT_REF:
+        setEnableAutoAltRef(value);
+        break;
+      case CTRL_NOISE_SENSITIVITY:
+        setNoiseSensitivity(value);
+        break;
+      case CTRL_SHARPNESS:
+        setSharpness(value);
+        break;
+      case CTRL_STATIC_THRESHOLD:
+        setStaticThreshold(value);
+        break;
+      case CTRL_TOKEN_PARTITIONS:
+        setTokenPartitions(value);
+        break;
+      case CTRL_ARNR_MAX_FRAMES:
+        setARNRMaxFrames(value);
+        break;
+      case CTRL_ARNR_STRENGTH:
+        setARNRStrength(value);
+        break;
+      case CTRL_ARNR_TYPE:
+        setARNRType(value);
+        break;
+      case CTRL_TUNING:
+        setTuning(value);
+        break;
+      case CTRL_CQ_LEVEL:
+        setCQLevel(value);
+        break;
+      case CTRL_MAX_INTRA_BITRATE_PCT:
+        setMaxIntraBitratePct(value);
+        break;
+    }
+  }
+
   public void close() {
-    vpxCodecDestroy(vpxCodecIface);
+    if (codecInitialized) {
+      vpxCodecDestroy(vpxCodecIface);
+      codecInitialized = false;
+    }
     vpxCodecFreeCodec(vpxCodecIface);
   }
 
@@ -130,14 +539,19 @@ public class LibVpxEnc extends LibVpxCom {
     }
 
     throwOnError();
+    remember(CTRL_CPU_USED, value);
   }
 
   public void setEnableAutoAltRef(int value) throws LibVpxException {
+    if (value != 0 && outputPartitions) {
+      throw new IllegalStateException("Auto alt-ref cannot be used with output partitions");
+    }
     if (vpxCodecEncCtlSetEnableAutoAltRef(vpxCodecIface, value) != 0) {
       throw new LibVpxException("Unable to Enable Auto Alt Ref");
     }
 
     throwOnError();
+    remember(CTRL_ENABLE_AUTO_ALT_REF, value);
   }
 
   public void setNoiseSensitivity(int value) throws LibVpxException {
@@ -146,6 +560,7 @@ public class LibVpxEnc extends LibVpxCom {
     }
 
     throwOnError();
+    remember(CTRL_NOISE_SENSITIVITY, value);
   }
 
   public void setSharpness(int value) throws LibVpxException {
@@ -154,6 +569,7 @@ public class LibVpxEnc extends LibVpxCom {
     }
 
     throwOnError();
+    remember(CTRL_SHARPNESS, value);
   }
 
   public void setStaticThreshold(int value) throws LibVpxException {
@@ -162,6 +578,7 @@ public class LibVpxEnc extends LibVpxCom {
     }
 
     throwOnError();
+    remember(CTRL_STATIC_THRESHOLD, value);
   }
 
   public void setTokenPartitions(int value) throws LibVpxException {
@@ -170,6 +587,9 @@ public class LibVpxEnc extends LibVpxCom {
     }
 
     throwOnError();
+    remember(CTRL_TOKEN_PARTITIONS, value);
+    // |value| is the log2 of the partition count.
+    tokenPartitions = Math.min(1 << value, MAX_TOKEN_PARTITIONS);
   }
 
   public void setARNRMaxFrames(int value) throws LibVpxException {
@@ -178,6 +598,7 @@ public class LibVpxEnc extends LibVpxCom {
     }
 
     throwOnError();
+    remember(CTRL_ARNR_MAX_FRAMES, value);
   }
 
   public void setARNRStrength(int value) throws LibVpxException {
@@ -186,6 +607,7 @@ public class LibVpxEnc extends LibVpxCom {
     }
 
     throwOnError();
+    remember(CTRL_ARNR_STRENGTH, value);
   }
 
   public void setARNRType(int value) throws LibVpxException {
@@ -194,6 +616,7 @@ public class LibVpxEnc extends LibVpxCom {
     }
 
     throwOnError();
+    remember(CTRL_ARNR_TYPE, value);
   }
 
   public void setTuning(int value) throws LibVpxException {
@@ -202,6 +625,7 @@ public class LibVpxEnc extends LibVpxCom {
     }
 
     throwOnError();
+    remember(CTRL_TUNING, value);
   }
 
   public void setCQLevel(int value) throws LibVpxException {
@@ -210,6 +634,7 @@ public class LibVpxEnc extends LibVpxCom {
     }
 
     throwOnError();
+    remember(CTRL_CQ_LEVEL, value);
   }
 
   public void setMaxIntraBitratePct(int value) throws LibVpxException {
@@ -218,5 +643,6 @@ public class LibVpxEnc extends LibVpxCom {
     }
 
     throwOnError();
+    remember(CTRL_MAX_INTRA_BITRATE_PCT, value);
   }
 }
@@ -7,8 +7,17 @@ package com.google.libvpx;
  * the libvpx encoder.
  */
 public class LibVpxEncConfig extends LibVpxCom {
+  // Supported numbers of temporal layers, see setTemporalLayers().
+  public static final int MAX_TEMPORAL_LAYERS = 3;
+
   private long encCfgObj;
 
+  // Temporal layer setup. Kept on the Java side, the JNI glue has no
+  // bindings for the ts_* fields; LibVpxEnc drives the layers through
+  // per-frame reference flags instead.
+  private int temporalLayers = 1;
+  private int[] temporalLayerBitrates = null;
+
   private native long vpxCodecEncAllocCfg();
   private native void vpxCodecEncFreeCfg(long cfg);
 
@@ -199,6 +208,45 @@ public class LibVpxEncConfig extends LibVpxCom {
     vpxCodecEncSetKFMode(encCfgObj, value);
   }
 
+  // Split the stream into |layers| temporal layers (1 to
+  // MAX_TEMPORAL_LAYERS). Frames of upper layers are never referenced by
+  // lower ones, so an SFU can drop them for weak subscribers. Enables error
+  // resilient mode when more than one layer is used.
+  public void setTemporalLayers(int layers) throws LibVpxException {
+    if (layers < 1 || layers > MAX_TEMPORAL_LAYERS) {
+      throw new LibVpxException("Unsupported number of temporal layers: " + layers);
+    }
+    temporalLayers = layers;
+    temporalLayerBitrates = null;
+    if (layers > 1) {
+      setErrorResilient(1);
+    }
+  }
+
+  // Set the cumulative target bitrate in kbit/s of each temporal layer,
+  // lowest first. libvpx is only given the total as rc_target_bitrate; the
+  // per layer values are informational for the sender.
+  public void setTemporalLayerBitrates(int[] kbps) throws LibVpxException {
+    if (kbps.length != temporalLayers) {
+      throw new LibVpxException("Expected " + temporalLayers + " layer bitrates");
+    }
+    temporalLayerBitrates = kbps.clone();
+    setRCTargetBitrate(kbps[kbps.length - 1]);
+  }
+
+  public int getTemporalLayers() {
+    return temporalLayers;
+  }
+
+  // Number of frames after which the layer pattern repeats.
+  public int getTemporalPeriodicity() {
+    return temporalLayers == 3 ? 4 : temporalLayers;
+  }
+
+  public int[] getTemporalLayerBitrates() {
+    return temporalLayerBitrates == null ? null : temporalLayerBitrates.clone();
+  }
+
   public int getThreads() {
     return vpxCodecEncGetThreads(encCfgObj);
   }
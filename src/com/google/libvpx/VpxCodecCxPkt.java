@@ -6,17 +6,23 @@ package com.google.libvpx;
  * Packet of data return from encoder.
  */
 public class VpxCodecCxPkt {
+  // Values of |flags|.
+  public static final int VPX_FRAME_IS_KEY = 0x1;
+  public static final int VPX_FRAME_IS_FRAGMENT = 0x10;
+
   public byte[] buffer;       // compressed data buffer
   public long   sz;           // length of compressed data
   public long   pts;          // time stamp to show frame (in timebase units)
-  long          duration;     // duration to show frame (in timebase units)
+  public long   duration;     // duration to show frame (in timebase units)
   public int    flags;        // flags for this frame
-  int           partitionId;  // the partition id
+  public int    partitionId;  // the partition id
                               // defines the decoding order
                               // of the partitions. Only
                               // applicable when "output partition"
                               // mode is enabled. First partition
                               // has id 0
+  public int    layerId;      // temporal layer of the frame,
+                              // 0 without temporal layers
   public VpxCodecCxPkt(long sz) {
     this.sz = sz;
     buffer = new byte[(int) this.sz];
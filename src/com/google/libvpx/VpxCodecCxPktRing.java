@@ -0,0 +1,34 @@
+package com.google.libvpx;
+
+/**
+ * Fixed ring of reusable packets the encoder writes compressed frames into.
+ * A packet stays valid until the ring wraps around to its slot again, so
+ * callers have to send or copy it within |size()| encoded frames.
+ */
+public class VpxCodecCxPktRing {
+  private final VpxCodecCxPkt[] slots;
+  private int next = 0;
+
+  public VpxCodecCxPktRing(int size, int initialCapacity) {
+    slots = new VpxCodecCxPkt[size];
+    for (int i = 0; i < size; ++i) {
+      slots[i] = new VpxCodecCxPkt(initialCapacity);
+    }
+  }
+
+  public int size() {
+    return slots.length;
+  }
+
+  // Take the slot after the last one handed out, with room for |sz| bytes.
+  // The buffer is only reallocated when a packet outgrows it.
+  VpxCodecCxPkt nextSlot(int sz) {
+    VpxCodecCxPkt pkt = slots[next];
+    next = (next + 1) % slots.length;
+    if (pkt.buffer.length < sz) {
+      pkt.buffer = new byte[Math.max(sz, 2 * pkt.buffer.length)];
+    }
+    pkt.sz = sz;
+    return pkt;
+  }
+}
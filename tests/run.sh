@@ -0,0 +1,9 @@
+#!/bin/sh
+# Build and run the tests on a plain JVM - not part of the apk build.
+cd "$(dirname "$0")" || exit 1
+rm -rf build && mkdir -p build
+javac -Xlint:all -Werror -d build \
+	$(find src -name '*.java') \
+	../src/com/example/licodeclient/StreamEventSequencer.java \
+	../src/com/example/licodeclient/SdpRewriter.java || exit 1
+exec java -ea -cp build com.example.licodeclient.AllTests
@@ -0,0 +1,10 @@
+package com.example.licodeclient;
+
+/** runs all tests, exits with 1 if one of their checks failed */
+public class AllTests {
+	public static void main(String[] args) throws Exception {
+		StreamEventSequencerTest.run();
+		SdpRewriterTest.run();
+		Checks.finish();
+	}
+}
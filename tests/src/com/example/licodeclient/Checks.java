@@ -0,0 +1,29 @@
+package com.example.licodeclient;
+
+/** counts and reports the checks of a test run */
+final class Checks {
+	private static int sFailures = 0;
+
+	private Checks() {
+	}
+
+	/** compare |actual| with |expected| and report the outcome */
+	static void check(String name, Object expected, Object actual) {
+		if (expected.equals(actual)) {
+			System.out.println("ok   " + name);
+		} else {
+			System.out.println("FAIL " + name + ": expected " + expected
+					+ ", got " + actual);
+			++sFailures;
+		}
+	}
+
+	/** report the result and exit with 1 if a check failed */
+	static void finish() {
+		if (sFailures > 0) {
+			System.out.println(sFailures + " failed");
+			System.exit(1);
+		}
+		System.out.println("all passed");
+	}
+}
@@ -0,0 +1,156 @@
+package com.example.licodeclient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.example.licodeclient.Checks.check;
+
+/**
+ * Checks the rules of SdpRewriter on a small offer: bandwidth lines are
+ * replaced rather than added, b=TIAS is written, removed codecs take their
+ * rtx payloads along and payload types are swapped everywhere they appear.
+ */
+public class SdpRewriterTest {
+	/** an offer with bandwidth lines already set, VP8 and VP9 with rtx */
+	static final String OFFER = "v=0\r\n"
+			+ "o=- 4323398519236547418 2 IN IP4 127.0.0.1\r\n"
+			+ "s=-\r\n"
+			+ "t=0 0\r\n"
+			+ "m=audio 1 RTP/SAVPF 111 0\r\n"
+			+ "c=IN IP4 0.0.0.0\r\n"
+			+ "b=AS:64\r\n"
+			+ "a=rtpmap:111 opus/48000/2\r\n"
+			+ "a=fmtp:111 minptime=10\r\n"
+			+ "a=rtpmap:0 PCMU/8000\r\n"
+			+ "m=video 1 RTP/SAVPF 100 101 96 97 116\r\n"
+			+ "c=IN IP4 0.0.0.0\r\n"
+			+ "b=AS:500\r\n"
+			+ "b=TIAS:500000\r\n"
+			+ "a=rtpmap:100 VP8/90000\r\n"
+			+ "a=rtcp-fb:100 nack\r\n"
+			+ "a=rtpmap:101 VP9/90000\r\n"
+			+ "a=rtcp-fb:101 nack\r\n"
+			+ "a=rtpmap:96 rtx/90000\r\n"
+			+ "a=fmtp:96 apt=100\r\n"
+			+ "a=rtpmap:97 rtx/90000\r\n"
+			+ "a=fmtp:97 apt=101\r\n"
+			+ "a=rtpmap:116 red/90000\r\n";
+
+	static void run() {
+		existingBandwidthIsReplaced();
+		tiasIsWritten();
+		unlimitedMediaIsLeftAlone();
+		removedCodecTakesItsRtxAlong();
+		keptCodecKeepsItsRtx();
+		payloadTypesAreSwapped();
+		preferredCodecMovesToTheFront();
+		sessionLinesPassThrough();
+	}
+
+	private static void existingBandwidthIsReplaced() {
+		String sdp = SdpRewriter.limitBandwidth(OFFER, 32, 300);
+		check("existingBandwidthIsReplaced audio", Arrays.asList("b=AS:32"),
+				linesOf(section(sdp, "audio"), "b="));
+		check("existingBandwidthIsReplaced video", Arrays.asList("b=AS:300"),
+				linesOf(section(sdp, "video"), "b="));
+		// right after the c= line, where the offer had them
+		check("existingBandwidthIsReplaced position", "b=AS:300",
+				section(sdp, "video").get(2));
+		check("existingBandwidthIsReplaced again", sdp,
+				SdpRewriter.limitBandwidth(sdp, 32, 300));
+	}
+
+	private static void tiasIsWritten() {
+		String sdp = new SdpRewriter().addRule(
+				new SdpRewriter.Bandwidth("video", 300, true)).rewrite(OFFER);
+		check("tiasIsWritten", Arrays.asList("b=AS:300", "b=TIAS:300000"),
+				linesOf(section(sdp, "video"), "b="));
+		check("tiasIsWritten audio untouched", Arrays.asList("b=AS:64"),
+				linesOf(section(sdp, "audio"), "b="));
+	}
+
+	private static void unlimitedMediaIsLeftAlone() {
+		String sdp = SdpRewriter.limitBandwidth(OFFER, 0, 0);
+		check("unlimitedMediaIsLeftAlone", OFFER, sdp);
+	}
+
+	private static void removedCodecTakesItsRtxAlong() {
+		String sdp = new SdpRewriter().addRule(
+				new SdpRewriter.CodecFilter("video", false, "vp9"))
+				.rewrite(OFFER);
+		List<String> video = section(sdp, "video");
+		check("removedCodecTakesItsRtxAlong m-line",
+				"m=video 1 RTP/SAVPF 100 96 116", video.get(0));
+		check("removedCodecTakesItsRtxAlong attributes", Arrays.asList(
+				"a=rtpmap:100 VP8/90000", "a=rtcp-fb:100 nack",
+				"a=rtpmap:96 rtx/90000", "a=fmtp:96 apt=100",
+				"a=rtpmap:116 red/90000"), linesOf(video, "a="));
+	}
+
+	private static void keptCodecKeepsItsRtx() {
+		String sdp = new SdpRewriter().addRule(
+				new SdpRewriter.CodecFilter("video", true, "VP8"))
+				.rewrite(OFFER);
+		check("keptCodecKeepsItsRtx", "m=video 1 RTP/SAVPF 100 96",
+				section(sdp, "video").get(0));
+		check("keptCodecKeepsItsRtx audio untouched", section(OFFER, "audio"),
+				section(sdp, "audio"));
+	}
+
+	private static void payloadTypesAreSwapped() {
+		String sdp = new SdpRewriter().addRule(
+				new SdpRewriter.PayloadType("video", "VP8", 101))
+				.rewrite(OFFER);
+		List<String> video = section(sdp, "video");
+		check("payloadTypesAreSwapped m-line",
+				"m=video 1 RTP/SAVPF 101 100 96 97 116", video.get(0));
+		check("payloadTypesAreSwapped attributes", Arrays.asList(
+				"a=rtpmap:101 VP8/90000", "a=rtcp-fb:101 nack",
+				"a=rtpmap:100 VP9/90000", "a=rtcp-fb:100 nack",
+				"a=rtpmap:96 rtx/90000", "a=fmtp:96 apt=101",
+				"a=rtpmap:97 rtx/90000", "a=fmtp:97 apt=100",
+				"a=rtpmap:116 red/90000"), linesOf(video, "a="));
+	}
+
+	private static void preferredCodecMovesToTheFront() {
+		String sdp = new SdpRewriter().addRule(
+				new SdpRewriter.CodecPreference("video", "VP9"))
+				.rewrite(OFFER);
+		check("preferredCodecMovesToTheFront",
+				"m=video 1 RTP/SAVPF 101 100 96 97 116",
+				section(sdp, "video").get(0));
+	}
+
+	private static void sessionLinesPassThrough() {
+		// line feeds alone are accepted, the output always uses CRLF
+		String sdp = new SdpRewriter().rewrite(OFFER.replace("\r\n", "\n"));
+		check("sessionLinesPassThrough", OFFER, sdp);
+	}
+
+	/** the lines of the section of |media|, m-line first */
+	private static List<String> section(String sdp, String media) {
+		List<String> lines = new ArrayList<String>();
+		boolean inside = false;
+		for (String line : sdp.split("\r\n")) {
+			if (line.startsWith("m=")) {
+				inside = line.startsWith("m=" + media + " ");
+			}
+			if (inside) {
+				lines.add(line);
+			}
+		}
+		return lines;
+	}
+
+	/** the lines starting with |prefix|, in order */
+	private static List<String> linesOf(List<String> lines, String prefix) {
+		List<String> result = new ArrayList<String>();
+		for (String line : lines) {
+			if (line.startsWith(prefix)) {
+				result.add(line);
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,179 @@
+package com.example.licodeclient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.example.licodeclient.Checks.check;
+
+/**
+ * Checks that stream events and the stream list of a join are applied in the
+ * order the server sent them, even while the connector thread lags behind the
+ * socket.io thread.
+ */
+public class StreamEventSequencerTest {
+	/** the remote streams as LicodeConnector keeps them - connector thread only */
+	private static class Room {
+		final LinkedHashSet<String> streams = new LinkedHashSet<String>();
+		final List<String> applied = new ArrayList<String>();
+
+		Runnable add(final String id) {
+			return new Runnable() {
+				@Override
+				public void run() {
+					streams.add(id);
+					applied.add("add " + id);
+				}
+			};
+		}
+
+		Runnable remove(final String id) {
+			return new Runnable() {
+				@Override
+				public void run() {
+					streams.remove(id);
+					applied.add("remove " + id);
+				}
+			};
+		}
+
+		/** like reconcileStreams: keep and add what is listed, drop the rest */
+		Runnable list(final String... ids) {
+			return new Runnable() {
+				@Override
+				public void run() {
+					streams.retainAll(Arrays.asList(ids));
+					streams.addAll(Arrays.asList(ids));
+					applied.add("list " + Arrays.toString(ids));
+				}
+			};
+		}
+	}
+
+	static void run() throws Exception {
+		eventsAfterTheAckFollowTheList();
+		eventsBeforeTheAckAreHeldBack();
+		clearDropsHeldEvents();
+		eventsRunDirectlyWithoutAJoin();
+	}
+
+	/**
+	 * the reported race: the ack posts the list, then a stream is removed and
+	 * another added before the connector thread got to the list
+	 */
+	private static void eventsAfterTheAckFollowTheList() throws Exception {
+		Room room = new Room();
+		Connector connector = new Connector();
+		StreamEventSequencer sequencer = new StreamEventSequencer(
+				connector.executor);
+
+		sequencer.hold();
+		sequencer.postList(room.list("a"));
+		sequencer.post(room.remove("a"));
+		sequencer.post(room.add("b"));
+		connector.drain();
+
+		check("eventsAfterTheAckFollowTheList",
+				Arrays.asList("b"), new ArrayList<String>(room.streams));
+		check("eventsAfterTheAckFollowTheList order",
+				Arrays.asList("list [a]", "remove a", "add b"), room.applied);
+	}
+
+	/** events signaled before the ack wait for the list and keep their order */
+	private static void eventsBeforeTheAckAreHeldBack() throws Exception {
+		Room room = new Room();
+		Connector connector = new Connector();
+		StreamEventSequencer sequencer = new StreamEventSequencer(
+				connector.executor);
+
+		sequencer.hold();
+		sequencer.post(room.add("b"));
+		sequencer.post(room.remove("b"));
+		sequencer.post(room.add("c"));
+		check("eventsBeforeTheAckAreHeldBack held", 3, sequencer.getHeld());
+		sequencer.postList(room.list("a"));
+		check("eventsBeforeTheAckAreHeldBack released", 0,
+				sequencer.getHeld());
+		connector.drain();
+
+		check("eventsBeforeTheAckAreHeldBack",
+				Arrays.asList("a", "c"), new ArrayList<String>(room.streams));
+		check("eventsBeforeTheAckAreHeldBack order", Arrays.asList(
+				"list [a]", "add b", "remove b", "add c"), room.applied);
+	}
+
+	/** a failed join drops what was held, later events run at once */
+	private static void clearDropsHeldEvents() throws Exception {
+		Room room = new Room();
+		Connector connector = new Connector();
+		StreamEventSequencer sequencer = new StreamEventSequencer(
+				connector.executor);
+
+		sequencer.hold();
+		sequencer.post(room.add("b"));
+		sequencer.clear();
+		check("clearDropsHeldEvents held", 0, sequencer.getHeld());
+		sequencer.post(room.add("c"));
+		connector.drain();
+
+		check("clearDropsHeldEvents", Arrays.asList("add c"), room.applied);
+	}
+
+	/** outside of a join events keep the order they were posted in */
+	private static void eventsRunDirectlyWithoutAJoin() throws Exception {
+		Room room = new Room();
+		Connector connector = new Connector();
+		StreamEventSequencer sequencer = new StreamEventSequencer(
+				connector.executor);
+
+		for (int i = 0; i < 100; ++i) {
+			sequencer.post(room.add("s" + i));
+			if (i % 3 == 0) {
+				sequencer.post(room.remove("s" + i));
+			}
+		}
+		check("eventsRunDirectlyWithoutAJoin held", 0, sequencer.getHeld());
+		connector.drain();
+
+		List<String> expected = new ArrayList<String>();
+		for (int i = 0; i < 100; ++i) {
+			if (i % 3 != 0) {
+				expected.add("s" + i);
+			}
+		}
+		check("eventsRunDirectlyWithoutAJoin", expected,
+				new ArrayList<String>(room.streams));
+	}
+
+	/**
+	 * the connector thread, blocked until drain() so everything posted queues
+	 * up behind the list as it does when the thread is busy
+	 */
+	private static class Connector {
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		private final CountDownLatch mBusy = new CountDownLatch(1);
+
+		Connector() {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						mBusy.await();
+					} catch (InterruptedException e) {
+					}
+				}
+			});
+		}
+
+		void drain() throws InterruptedException {
+			mBusy.countDown();
+			executor.shutdown();
+			executor.awaitTermination(10, TimeUnit.SECONDS);
+		}
+	}
+}